@@ -0,0 +1,32 @@
+package me.perch;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/** Color parsing (write path) and display rendering (what formatColorDisplay used to do per placeholder). */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ColorBenchmark {
+
+    @Param({"#FF8800", "dark_purple", "reset"})
+    public String input;
+
+    private int packed;
+
+    @Setup
+    public void setup() {
+        packed = WaypointColor.parse(input).packed();
+    }
+
+    @Benchmark
+    public WaypointColor parse() {
+        return WaypointColor.parse(input);
+    }
+
+    @Benchmark
+    public String displayFromStored() {
+        return WaypointColor.of(packed).display();
+    }
+}
@@ -0,0 +1,50 @@
+package me.perch;
+
+import org.bukkit.command.CommandSender;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/** Message compilation (per reload) and rendering/sending (per command). */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MessageBenchmark {
+
+    private YamlConfiguration cfg;
+    private Messages messages;
+    private CommandSender sink;
+
+    @Setup
+    public void setup() {
+        cfg = YamlConfiguration.loadConfiguration(new InputStreamReader(
+                Objects.requireNonNull(getClass().getResourceAsStream("/config.yml")), StandardCharsets.UTF_8));
+        messages = Messages.compile(cfg);
+        sink = Stubs.of(CommandSender.class, Map.of());
+    }
+
+    @Benchmark
+    public Messages compile() {
+        return Messages.compile(cfg);
+    }
+
+    @Benchmark
+    public String renderConstant() {
+        return messages.get("bar-off").render();
+    }
+
+    @Benchmark
+    public String renderWithParams() {
+        return messages.get("bar-status-on").render("range", "250");
+    }
+
+    @Benchmark
+    public void sendWithParams() {
+        messages.send(sink, "range-set", "range", "250");
+    }
+}
@@ -0,0 +1,54 @@
+package me.perch;
+
+import org.bukkit.ChatColor;
+import org.bukkit.OfflinePlayer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/** PAPIExpansion.onRequest per placeholder: unchanged state (cache hit) and right after a state change. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PlaceholderBenchmark {
+
+    @Param({"status", "status_symbol", "status_bool", "range", "color", "color_raw", "global_range", "COLOR"})
+    public String key;
+
+    private final UUID id = UUID.randomUUID();
+    private final PlayerStateStore state = new PlayerStateStore();
+    private PAPIExpansion expansion;
+    private OfflinePlayer player;
+    private int tick;
+
+    @Setup
+    public void setup() {
+        state.setRange(id, 300, 0);
+        state.setColor(id, WaypointColor.parse("#FF8800"));
+        LocatorBarService view = new LocatorBarService() {
+            @Override public boolean isEnabled(UUID uuid) { return !state.get(uuid).isDisabled(); }
+            @Override public int getRange(UUID uuid) { return Math.min(state.get(uuid).rangeOr(250), 250); }
+            @Override public boolean hasCustomRange(UUID uuid) { return state.get(uuid).isCustomRange(); }
+            @Override public int getColorRgb(UUID uuid) { return WaypointColor.rgbOf(state.get(uuid).color); }
+            @Override public ChatColor getNamedColor(UUID uuid) { return WaypointColor.namedOf(state.get(uuid).color); }
+            @Override public int getGlobalRange() { return 250; }
+            @Override public int getEffectiveRange() { return 250; }
+            @Override public Batch batch() { throw new UnsupportedOperationException(); }
+        };
+        expansion = new PAPIExpansion(view, "bench", new Metrics());
+        player = Stubs.of(OfflinePlayer.class, Map.of("getUniqueId", id, "isOnline", true));
+    }
+
+    @Benchmark
+    public String unchanged() {
+        return expansion.onRequest(player, key);
+    }
+
+    @Benchmark
+    public String afterChange() {
+        state.setRange(id, 100 + (++tick & 255), 0);
+        return expansion.onRequest(player, key);
+    }
+}
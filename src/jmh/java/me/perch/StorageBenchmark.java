@@ -0,0 +1,83 @@
+package me.perch;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Full save (what saveData() used to do on the main thread) and startup hydration (onEnable)
+ * for each storage backend, at 1k/10k/100k stored players.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StorageBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int players;
+
+    private final Logger log = Logger.getLogger("bench");
+    private final Metrics metrics = new Metrics();
+    private PlayerStateStore state;
+    private DataStore.Snapshot snapshot;
+    private File yamlDir;
+    private File journalDir;
+    private YamlDataStore yaml;
+    private JournalDataStore journal;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Random rnd = new Random(42);
+        state = new PlayerStateStore();
+        for (int i = 0; i < players; i++) {
+            UUID id = new UUID(rnd.nextLong(), rnd.nextLong());
+            state.setRange(id, 50 + rnd.nextInt(500), 0);
+            if (rnd.nextInt(5) == 0) state.setDisabled(id, true);
+            if (rnd.nextInt(3) == 0) state.setColor(id, WaypointColor.of(rnd.nextInt(0x1000000)));
+        }
+        snapshot = new DataStore.Snapshot(state.copy());
+
+        yamlDir = Files.createTempDirectory("plbt-yaml").toFile();
+        journalDir = Files.createTempDirectory("plbt-journal").toFile();
+        yaml = new YamlDataStore(new File(yamlDir, "data.yml"), log, metrics);
+        journal = new JournalDataStore(journalDir, log, metrics, 1L << 20);
+        yaml.write(snapshot);
+        journal.writeSnapshot(snapshot);
+    }
+
+    /** Main-thread part of a flush: copying the record map. */
+    @Benchmark
+    public DataStore.Snapshot snapshotCopy() {
+        return new DataStore.Snapshot(state.copy());
+    }
+
+    @Benchmark
+    public void yamlSave() {
+        yaml.write(snapshot);
+    }
+
+    @Benchmark
+    public void journalCompact() throws IOException {
+        journal.writeSnapshot(snapshot);
+    }
+
+    @Benchmark
+    public PlayerStateStore yamlLoad() {
+        PlayerStateStore into = new PlayerStateStore();
+        new YamlDataStore(new File(yamlDir, "data.yml"), log, metrics).load(into, 250);
+        return into;
+    }
+
+    @Benchmark
+    public PlayerStateStore journalLoad() {
+        PlayerStateStore into = new PlayerStateStore();
+        new JournalDataStore(journalDir, log, metrics, 1L << 20).load(into, 250);
+        return into;
+    }
+}
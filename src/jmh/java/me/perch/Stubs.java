@@ -0,0 +1,26 @@
+package me.perch;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+
+/** Minimal server-less stand-ins for Bukkit interfaces (benchmarks run on a plain JVM). */
+final class Stubs {
+
+    private Stubs() {}
+
+    /** Proxy for an interface: named methods return the mapped value, everything else a zero/null default. */
+    static <T> T of(Class<T> type, Map<String, Object> returns) {
+        Object proxy = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (self, method, args) -> {
+            Object v = returns.get(method.getName());
+            if (v != null) return v;
+            Class<?> r = method.getReturnType();
+            if (r == boolean.class) return false;
+            if (r == int.class) return 0;
+            if (r == long.class) return 0L;
+            if (r == double.class) return 0d;
+            if (r == float.class) return 0f;
+            return null;
+        });
+        return type.cast(proxy);
+    }
+}
@@ -0,0 +1,357 @@
+package me.perch;
+
+import io.papermc.paper.threadedregions.scheduler.AsyncScheduler;
+import io.papermc.paper.threadedregions.scheduler.GlobalRegionScheduler;
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import org.bukkit.NamespacedKey;
+import org.bukkit.Registry;
+import org.bukkit.Server;
+import org.bukkit.attribute.Attribute;
+import org.bukkit.attribute.AttributeInstance;
+import org.bukkit.command.ConsoleCommandSender;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Cancellable;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.plugin.PluginManager;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Just enough of a Paper server to run the plugin on a plain JVM (load test).
+ * - The thread that creates it is the main/global tick thread; {@link #tick()} runs one server tick
+ * - Global region tasks (execute, run, runDelayed, runAtFixedRate) run from tick(); async scheduler tasks never run
+ * - Listeners registered through the plugin manager get events from callEvent, in priority order
+ * - Console commands are counted per kind, not executed; online players are proxies that count messages
+ * - The attribute registry resolves the waypoint range keys to stand-in attributes (the API predates them), and
+ *   players carry those attribute instances, so the typed applier is measured and its base-value writes counted
+ * - Everything else gets a lenient default: zero/false/null, or a no-op proxy for interface return types
+ */
+final class FakeServer {
+
+    private static final int TICK_WINDOW = 100; // Paper's getAverageTickTime() covers the last 100 ticks
+
+    // stand-ins for waypoint_receive_range / waypoint_transmit_range, which the compile-time API has no constants for
+    private static final Attribute RECEIVE = Attribute.GENERIC_FOLLOW_RANGE;
+    private static final Attribute TRANSMIT = Attribute.GENERIC_LUCK;
+    private static final double VANILLA_RANGE = 6.0E7; // default player waypoint ranges
+
+    private static final class Task {
+        final Consumer<ScheduledTask> body;
+        final long period;
+        long next;
+        volatile boolean cancelled;
+        ScheduledTask handle;
+
+        Task(Consumer<ScheduledTask> body, long next, long period) {
+            this.body = body;
+            this.next = next;
+            this.period = period;
+        }
+    }
+
+    private static final class Handler {
+        final Listener listener;
+        final Method method;
+        final Class<?> type;
+        final EventHandler annotation;
+
+        Handler(Listener listener, Method method, EventHandler annotation) {
+            this.listener = listener;
+            this.method = method;
+            this.type = method.getParameterTypes()[0];
+            this.annotation = annotation;
+        }
+    }
+
+    private final Thread mainThread = Thread.currentThread();
+    private final Logger logger = Logger.getLogger("LoadTest");
+
+    // read by the async scoreboard, written on the main thread
+    private final Map<UUID, Player> online = new ConcurrentHashMap<>();
+
+    private final ConcurrentLinkedQueue<Runnable> nextTick = new ConcurrentLinkedQueue<>();
+    private final List<Task> tasks = new ArrayList<>(); // main thread only
+    private long currentTick = 0;
+
+    private final long[] tickNanos = new long[TICK_WINDOW];
+    private int tickSamples = 0;
+    private volatile double averageTickMillis = 0;
+
+    private final LongAdder messages = new LongAdder();
+    private final Map<String, LongAdder> dispatched = new ConcurrentSkipListMap<>();
+    private final Map<String, LongAdder> attributeSets = new ConcurrentSkipListMap<>();
+
+    // sorted by priority; registered on the main thread, called from login threads too
+    private final List<Handler> handlers = new CopyOnWriteArrayList<>();
+
+    final Server server;
+    private final ConsoleCommandSender console;
+
+    FakeServer() {
+        GlobalRegionScheduler global = proxy(GlobalRegionScheduler.class, this::globalScheduler);
+        AsyncScheduler async = proxy(AsyncScheduler.class, (self, m, args) -> inertTask(m));
+        PluginManager plugins = proxy(PluginManager.class, (self, m, args) -> {
+            switch (m.getName()) {
+                case "getPlugin": return null; // no PlaceholderAPI, no hooks
+                case "registerEvents": register((Listener) args[0]); return null;
+                case "callEvent": call((Event) args[0]); return null;
+                default: return lenient(self, m, args);
+            }
+        });
+        Map<String, Attribute> waypoint = Map.of("waypoint_receive_range", RECEIVE, "waypoint_transmit_range", TRANSMIT);
+        Registry<?> attributes = registry(key -> waypoint.get(key.getKey()));
+        Registry<?> empty = registry(key -> null);
+        this.console = proxy(ConsoleCommandSender.class, (self, m, args) -> {
+            switch (m.getName()) {
+                case "getName": return "CONSOLE";
+                case "hasPermission":
+                case "isOp": return true;
+                case "sendMessage": messages.increment(); return null;
+                default: return lenient(self, m, args);
+            }
+        });
+        this.server = proxy(Server.class, (self, m, args) -> {
+            switch (m.getName()) {
+                case "getLogger": return logger;
+                case "getName": return "LoadTest";
+                case "getVersion":
+                case "getBukkitVersion":
+                case "getMinecraftVersion": return "loadtest";
+                case "getConsoleSender": return console;
+                case "getGlobalRegionScheduler": return global;
+                case "getAsyncScheduler": return async;
+                case "getRegistry": return args[0] == Attribute.class ? attributes : empty;
+                case "getPluginManager": return plugins;
+                case "getOnlinePlayers": return Collections.unmodifiableCollection(online.values());
+                case "getPlayer": return args[0] instanceof UUID ? online.get(args[0]) : null;
+                case "dispatchCommand": dispatch((String) args[1]); return true;
+                case "isPrimaryThread":
+                case "isGlobalTickThread":
+                case "isOwnedByCurrentRegion": return Thread.currentThread() == mainThread;
+                case "getAverageTickTime": return averageTickMillis;
+                case "getTPS": {
+                    double tps = averageTickMillis <= 50 ? 20 : 1000 / averageTickMillis;
+                    return new double[]{tps, tps, tps};
+                }
+                case "getCurrentTick": return (int) currentTick;
+                default: return lenient(self, m, args);
+            }
+        });
+    }
+
+    // ---------------- Players ----------------
+    Player join(UUID id, String name, boolean playedBefore) {
+        AttributeInstance receive = attribute("receive");
+        AttributeInstance transmit = attribute("transmit");
+        Player p = proxy(Player.class, (self, m, args) -> {
+            switch (m.getName()) {
+                case "getUniqueId": return id;
+                case "getAttribute": return args[0] == RECEIVE ? receive : args[0] == TRANSMIT ? transmit : null;
+                case "getName": return name;
+                case "hasPlayedBefore": return playedBefore;
+                case "isOnline": return online.containsKey(id);
+                case "sendMessage": messages.increment(); return null;
+                default: return lenient(self, m, args);
+            }
+        });
+        online.put(id, p);
+        return p;
+    }
+
+    void quit(UUID id) {
+        online.remove(id);
+    }
+
+    Collection<Player> onlinePlayers() {
+        return online.values();
+    }
+
+    ConsoleCommandSender console() {
+        return console;
+    }
+
+    // ---------------- Ticks ----------------
+    /** Run one server tick on the main thread: queued one-shot tasks first, then due scheduled tasks. */
+    void tick() {
+        currentTick++;
+        for (Runnable r; (r = nextTick.poll()) != null; ) r.run();
+        // index loop: tasks scheduled while running are appended and picked up on their due tick
+        for (int i = 0; i < tasks.size(); i++) {
+            Task t = tasks.get(i);
+            if (t.cancelled || t.next > currentTick) continue;
+            t.body.accept(t.handle);
+            if (t.period > 0) t.next += t.period; else t.cancelled = true;
+        }
+        tasks.removeIf(t -> t.cancelled);
+    }
+
+    /** Feed the measured duration of the last tick (drives getAverageTickTime for adaptive mode). */
+    void recordTick(long nanos) {
+        tickNanos[tickSamples++ % TICK_WINDOW] = nanos;
+        int n = Math.min(tickSamples, TICK_WINDOW);
+        long sum = 0;
+        for (int i = 0; i < n; i++) sum += tickNanos[i];
+        averageTickMillis = sum / (n * 1_000_000.0);
+    }
+
+    // ---------------- Counters ----------------
+    long messages() {
+        return messages.sum();
+    }
+
+    Map<String, LongAdder> dispatched() {
+        return dispatched;
+    }
+
+    /** setBaseValue calls on the waypoint range attributes, by kind (receive/transmit). */
+    Map<String, LongAdder> attributeSets() {
+        return attributeSets;
+    }
+
+    private void dispatch(String command) {
+        String kind;
+        if (command.startsWith("waypoint ")) kind = "color";
+        else if (command.contains("waypoint_receive_range")) kind = "receive";
+        else if (command.contains("waypoint_transmit_range")) kind = "transmit";
+        else kind = command.split(" ", 2)[0];
+        dispatched.computeIfAbsent(kind, k -> new LongAdder()).increment();
+    }
+
+    // ---------------- Attributes ----------------
+    private static Registry<?> registry(Function<NamespacedKey, Object> lookup) {
+        return proxy(Registry.class, (self, m, args) -> {
+            switch (m.getName()) {
+                case "get": return args[0] instanceof NamespacedKey ? lookup.apply((NamespacedKey) args[0]) : null;
+                case "iterator": return Collections.emptyIterator();
+                default: return lenient(self, m, args);
+            }
+        });
+    }
+
+    private AttributeInstance attribute(String kind) {
+        double[] base = {VANILLA_RANGE};
+        LongAdder sets = attributeSets.computeIfAbsent(kind, k -> new LongAdder());
+        return proxy(AttributeInstance.class, (self, m, args) -> {
+            switch (m.getName()) {
+                case "getBaseValue":
+                case "getValue": return base[0];
+                case "setBaseValue": base[0] = (Double) args[0]; sets.increment(); return null;
+                default: return lenient(self, m, args);
+            }
+        });
+    }
+
+    // ---------------- Events ----------------
+    private void register(Listener listener) {
+        List<Handler> added = new ArrayList<>();
+        for (Method m : listener.getClass().getMethods()) {
+            EventHandler h = m.getAnnotation(EventHandler.class);
+            if (h != null && m.getParameterCount() == 1) added.add(new Handler(listener, m, h));
+        }
+        handlers.addAll(added);
+        handlers.sort(Comparator.comparing(h -> h.annotation.priority()));
+    }
+
+    /** Like SimplePluginManager#callEvent: handlers in priority order, failures logged and skipped. */
+    private void call(Event event) {
+        for (Handler h : handlers) {
+            if (!h.type.isInstance(event)) continue;
+            if (h.annotation.ignoreCancelled() && event instanceof Cancellable && ((Cancellable) event).isCancelled()) continue;
+            try {
+                h.method.invoke(h.listener, event);
+            } catch (InvocationTargetException e) {
+                logger.log(Level.SEVERE, "Could not pass " + event.getClass().getSimpleName() + " to " + h.method, e.getCause());
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    // ---------------- Schedulers ----------------
+    @SuppressWarnings("unchecked")
+    private Object globalScheduler(Object self, Method m, Object[] args) {
+        switch (m.getName()) {
+            case "execute":
+                nextTick.add((Runnable) args[1]);
+                return null;
+            case "run":
+                return schedule((Consumer<ScheduledTask>) args[1], 1, 0);
+            case "runDelayed":
+                return schedule((Consumer<ScheduledTask>) args[1], (Long) args[2], 0);
+            case "runAtFixedRate":
+                return schedule((Consumer<ScheduledTask>) args[1], (Long) args[2], (Long) args[3]);
+            case "cancelTasks":
+                tasks.forEach(t -> t.cancelled = true);
+                return null;
+            default:
+                return lenient(self, m, args);
+        }
+    }
+
+    private ScheduledTask schedule(Consumer<ScheduledTask> body, long delay, long period) {
+        if (Thread.currentThread() != mainThread) throw new IllegalStateException("schedule from the main thread");
+        Task t = new Task(body, currentTick + Math.max(1, delay), period);
+        t.handle = proxy(ScheduledTask.class, (self, m, args) -> {
+            switch (m.getName()) {
+                case "cancel": {
+                    boolean was = t.cancelled;
+                    t.cancelled = true;
+                    return was ? ScheduledTask.CancelledState.CANCELLED_ALREADY : ScheduledTask.CancelledState.CANCELLED_BY_CALLER;
+                }
+                case "isCancelled": return t.cancelled;
+                default: return lenient(self, m, args);
+            }
+        });
+        tasks.add(t);
+        return t.handle;
+    }
+
+    private static Object inertTask(Method m) {
+        if (m.getReturnType() != ScheduledTask.class) return null;
+        return proxy(ScheduledTask.class, (self, mm, args) ->
+                mm.getName().equals("cancel") ? ScheduledTask.CancelledState.CANCELLED_BY_CALLER : lenient(self, mm, args));
+    }
+
+    // ---------------- Proxies ----------------
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+    /** Identity equals/hashCode, zero for primitives, a no-op proxy for interfaces, null otherwise. */
+    private static Object lenient(Object self, Method m, Object[] args) {
+        switch (m.getName()) {
+            case "equals": if (m.getParameterCount() == 1) return self == args[0]; break;
+            case "hashCode": if (m.getParameterCount() == 0) return System.identityHashCode(self); break;
+            case "toString": if (m.getParameterCount() == 0) return m.getDeclaringClass().getSimpleName() + "@fake"; break;
+            default: break;
+        }
+        Class<?> r = m.getReturnType();
+        if (r == boolean.class) return false;
+        if (r == int.class) return 0;
+        if (r == long.class) return 0L;
+        if (r == double.class) return 0d;
+        if (r == float.class) return 0f;
+        if (r == short.class) return (short) 0;
+        if (r == byte.class) return (byte) 0;
+        if (r == char.class) return (char) 0;
+        if (r.isInterface() && !Collection.class.isAssignableFrom(r) && !Map.class.isAssignableFrom(r)) {
+            return proxy(r, FakeServer::lenient);
+        }
+        return null;
+    }
+}
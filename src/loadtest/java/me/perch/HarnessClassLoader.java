@@ -0,0 +1,115 @@
+package me.perch;
+
+import io.papermc.paper.plugin.configuration.PluginMeta;
+import io.papermc.paper.plugin.provider.classloader.ConfiguredPluginClassLoader;
+import io.papermc.paper.plugin.provider.classloader.PluginClassLoaderGroup;
+import org.bukkit.Server;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Loads the plugin the way Paper does, so the load test builds it through its public no-arg constructor.
+ * - me.perch classes (plugin and harness) are defined here, child-first; everything else comes from the parent
+ * - JavaPlugin() sees a {@link ConfiguredPluginClassLoader} and calls back into {@link #init(JavaPlugin)},
+ *   which hands the plugin the fake server, description and data folder set up by {@link #construct}
+ * - The harness itself re-enters through {@link #launch}, so it shares the plugin's package like a test would
+ */
+final class HarnessClassLoader extends URLClassLoader implements ConfiguredPluginClassLoader {
+
+    private static final String PACKAGE = "me.perch.";
+    // loaded once by the parent: the launcher itself and the PluginLoader service JavaPlugin#init looks up
+    private static final Set<String> SHARED = Set.of(HarnessClassLoader.class.getName(), HarnessPluginLoader.class.getName());
+
+    private Server server;
+    private PluginDescriptionFile description;
+    private File dataFolder;
+    private JavaPlugin plugin;
+
+    private HarnessClassLoader(URL[] urls, ClassLoader parent) {
+        super(urls, parent);
+    }
+
+    /**
+     * Re-run {@code main} inside a fresh loader unless it already is. Returns true when the call was handed off,
+     * in which case the caller returns immediately.
+     */
+    static boolean launch(Class<?> main, String[] args) throws Exception {
+        if (main.getClassLoader() instanceof HarnessClassLoader) return false;
+        try (HarnessClassLoader loader = new HarnessClassLoader(classpath(), main.getClassLoader())) {
+            loader.loadClass(main.getName()).getMethod("main", String[].class).invoke(null, (Object) args);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof Exception) throw (Exception) e.getCause();
+            throw e;
+        }
+        return true;
+    }
+
+    /** Construct a plugin against the given server; its constructor must run on this loader's classes. */
+    synchronized <T extends JavaPlugin> T construct(Server server, PluginDescriptionFile description, File dataFolder,
+                                                   Supplier<T> constructor) {
+        if (plugin != null) throw new IllegalStateException("One plugin per loader");
+        this.server = server;
+        this.description = description;
+        this.dataFolder = dataFolder;
+        return constructor.get();
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        if (!name.startsWith(PACKAGE) || SHARED.contains(name)) return super.loadClass(name, resolve);
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> c = findLoadedClass(name);
+            if (c == null) c = findClass(name);
+            if (resolve) resolveClass(c);
+            return c;
+        }
+    }
+
+    // ---------------- ConfiguredPluginClassLoader ----------------
+    @Override
+    public void init(JavaPlugin plugin) {
+        if (server == null) throw new IllegalStateException("Plugins are built through HarnessClassLoader#construct");
+        plugin.init(server, description, dataFolder, new File(dataFolder, description.getName() + ".jar"), this,
+                description, Logger.getLogger(description.getName()));
+        this.plugin = plugin;
+    }
+
+    @Override
+    public PluginMeta getConfiguration() {
+        return description;
+    }
+
+    @Override
+    public Class<?> loadClass(String name, boolean resolve, boolean checkGlobal, boolean checkLibraries) throws ClassNotFoundException {
+        return loadClass(name, resolve);
+    }
+
+    @Override
+    public JavaPlugin getPlugin() {
+        return plugin;
+    }
+
+    @Override
+    public PluginClassLoaderGroup getGroup() {
+        return null;
+    }
+
+    private static URL[] classpath() throws MalformedURLException {
+        List<URL> urls = new ArrayList<>();
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            if (!entry.isEmpty()) urls.add(new File(entry).toURI().toURL());
+        }
+        return urls.toArray(new URL[0]);
+    }
+}
@@ -0,0 +1,50 @@
+package me.perch;
+
+import org.bukkit.event.Event;
+import org.bukkit.event.Listener;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.PluginLoader;
+import org.bukkit.plugin.RegisteredListener;
+
+import java.io.File;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * The PluginLoader service JavaPlugin#init resolves for Plugin#getPluginLoader (META-INF/services).
+ * The load test never loads plugins from jars or lets the server enable them, so every operation is unsupported.
+ */
+public final class HarnessPluginLoader implements PluginLoader {
+
+    @Override
+    public Plugin loadPlugin(File file) {
+        throw new UnsupportedOperationException("load test plugins are built by HarnessClassLoader");
+    }
+
+    @Override
+    public PluginDescriptionFile getPluginDescription(File file) {
+        throw new UnsupportedOperationException("load test plugins are built by HarnessClassLoader");
+    }
+
+    @Override
+    public Pattern[] getPluginFileFilters() {
+        return new Pattern[0];
+    }
+
+    @Override
+    public Map<Class<? extends Event>, Set<RegisteredListener>> createRegisteredListeners(Listener listener, Plugin plugin) {
+        throw new UnsupportedOperationException("listeners are registered through FakeServer's plugin manager");
+    }
+
+    @Override
+    public void enablePlugin(Plugin plugin) {
+        throw new UnsupportedOperationException("the load test enables the plugin itself");
+    }
+
+    @Override
+    public void disablePlugin(Plugin plugin) {
+        throw new UnsupportedOperationException("the load test disables the plugin itself");
+    }
+}
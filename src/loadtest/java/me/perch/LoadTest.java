@@ -0,0 +1,450 @@
+package me.perch;
+
+import net.kyori.adventure.text.Component;
+import org.bukkit.Bukkit;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.plugin.PluginDescriptionFile;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.management.MemoryMXBean;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+
+/**
+ * Headless load test: the whole plugin on a {@link FakeServer}, driven like a busy server.
+ * - The plugin is built by {@link HarnessClassLoader} through its public constructor, and events reach it
+ *   through the plugin manager, as on a real server
+ * - Players join over the first fifth of the run (pre-login on a worker pool, as the server does),
+ *   toggle /locatorbar and change /locatorcolor at random, and quit during the last tenth
+ * - An admin runs /locatorrange at 40% and 70% of the run; an async "scoreboard" thread polls the
+ *   PAPI expansion for every online player
+ * - Reports main-thread time per tick, attribute writes and dispatched console commands, storage bytes written and heap growth
+ *   as JSON, so runs of different releases can be diffed
+ *
+ * ./gradlew loadTest [-PloadTestPlayers=5000] [-PloadTestTicks=1200] [-PloadTestStorage=sharded]
+ *                    [-PloadTestSet=density.enabled=true,adaptive.enabled=true]
+ */
+public final class LoadTest {
+
+    private static final String[] COLORS = {"red", "blue", "gold", "aqua", "#FF8800", "00AAFF", "reset"};
+    private static final String[] SCOREBOARD_KEYS = {"status", "range", "color", "effective_range"};
+
+    private LoadTest() {
+    }
+
+    // ---------------- Options ----------------
+    private static final class Options {
+        int players = 2000;
+        int ticks = 1200;
+        long tickMillis = 50;            // pace ticks like a real server; 0 = run flat out
+        String storage = "yaml";
+        long seed = 1;
+        long scoreboardMillis = 500;
+        double actionsPerPlayerSecond = 0.02;
+        Path out = Paths.get("build/reports/loadtest/report.json");
+        Path data = Paths.get("build/loadtest/data");
+        final Map<String, String> overrides = new LinkedHashMap<>();
+
+        static Options parse(String[] args) {
+            Options o = new Options();
+            for (int i = 0; i + 1 < args.length; i += 2) {
+                String v = args[i + 1];
+                switch (args[i]) {
+                    case "--players": o.players = Integer.parseInt(v); break;
+                    case "--ticks": o.ticks = Integer.parseInt(v); break;
+                    case "--tick-millis": o.tickMillis = Long.parseLong(v); break;
+                    case "--storage": o.storage = v; break;
+                    case "--seed": o.seed = Long.parseLong(v); break;
+                    case "--scoreboard-millis": o.scoreboardMillis = Long.parseLong(v); break;
+                    case "--action-rate": o.actionsPerPlayerSecond = Double.parseDouble(v); break;
+                    case "--out": o.out = Paths.get(v); break;
+                    case "--data": o.data = Paths.get(v); break;
+                    case "--set":
+                        for (String kv : v.split(",")) {
+                            int eq = kv.indexOf('=');
+                            if (eq > 0) o.overrides.put(kv.substring(0, eq).trim(), kv.substring(eq + 1).trim());
+                        }
+                        break;
+                    default: throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+            return o;
+        }
+    }
+
+    // ---------------- Scoreboard ----------------
+    /** Polls placeholders for everyone online from its own thread, like an async scoreboard plugin. */
+    private static final class Scoreboard extends Thread {
+        private final FakeServer server;
+        private final PAPIExpansion expansion;
+        private final long periodMillis;
+        final Metrics.Timer latency = new Metrics().timer("scoreboard");
+        private volatile boolean running = true;
+
+        Scoreboard(FakeServer server, PAPIExpansion expansion, long periodMillis) {
+            super("LoadTest-Scoreboard");
+            setDaemon(true);
+            this.server = server;
+            this.expansion = expansion;
+            this.periodMillis = Math.max(1, periodMillis);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                for (Player p : server.onlinePlayers()) {
+                    for (String key : SCOREBOARD_KEYS) {
+                        long start = System.nanoTime();
+                        expansion.onRequest(p, key);
+                        latency.since(start);
+                    }
+                }
+                try {
+                    Thread.sleep(periodMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        void finish() throws InterruptedException {
+            running = false;
+            interrupt();
+            join();
+        }
+    }
+
+    // ---------------- Run ----------------
+    public static void main(String[] args) throws Exception {
+        if (HarnessClassLoader.launch(LoadTest.class, args)) return;
+        Options o = Options.parse(args);
+        Random rnd = new Random(o.seed);
+
+        FakeServer fake = new FakeServer();
+        Bukkit.setServer(fake.server);
+
+        File dataFolder = o.data.toFile();
+        deleteRecursively(o.data);
+        Files.createDirectories(o.data);
+        writeConfig(dataFolder, o);
+
+        PluginDescriptionFile description;
+        try (InputStream in = LoadTest.class.getClassLoader().getResourceAsStream("plugin.yml")) {
+            description = new PluginDescriptionFile(Objects.requireNonNull(in, "plugin.yml not on the classpath"));
+        }
+        HarnessClassLoader loader = (HarnessClassLoader) LoadTest.class.getClassLoader();
+        LocatorBarTweaks plugin = loader.construct(fake.server, description, dataFolder, LocatorBarTweaks::new);
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long heapBefore = usedHeapAfterGc(memory);
+        long heapPeak = heapBefore;
+
+        plugin.onLoad();
+        plugin.onEnable();
+        Metrics metrics = field(plugin, "metrics", Metrics.class);
+
+        Scoreboard scoreboard = new Scoreboard(fake, new PAPIExpansion(plugin, "loadtest", metrics), o.scoreboardMillis);
+        scoreboard.start();
+
+        Command bar = command("locatorbar");
+        Command color = command("locatorcolor");
+        Command range = command("locatorrange");
+        Map<String, Long> issued = new TreeMap<>();
+
+        // Pre-login runs off the main thread; players join on the first tick after it completes
+        ExecutorService login = Executors.newFixedThreadPool(4);
+        ConcurrentLinkedQueue<Integer> ready = new ConcurrentLinkedQueue<>();
+        UUID[] ids = new UUID[o.players];
+        for (int i = 0; i < o.players; i++) ids[i] = new UUID(rnd.nextLong(), rnd.nextLong());
+
+        List<Player> online = new ArrayList<>(); // main thread view, for picking random players
+        int joinTicks = Math.max(1, o.ticks / 5);
+        int joinsPerTick = (o.players + joinTicks - 1) / joinTicks;
+        int quitFrom = o.ticks - Math.max(1, o.ticks / 10);
+        int quitsPerTick = (o.players + (o.ticks - quitFrom) - 1) / (o.ticks - quitFrom);
+        int[] rangeTicks = {o.ticks * 2 / 5, o.ticks * 7 / 10};
+        int nextLogin = 0;
+        double actionCredit = 0;
+
+        long[] tickNanos = new long[o.ticks];
+        long wallStart = System.nanoTime();
+        for (int tick = 0; tick < o.ticks; tick++) {
+            for (int n = 0; n < joinsPerTick && nextLogin < o.players; n++, nextLogin++) {
+                int idx = nextLogin;
+                login.execute(() -> {
+                    InetAddress address = InetAddress.getLoopbackAddress();
+                    Bukkit.getPluginManager().callEvent(new AsyncPlayerPreLoginEvent("lt" + idx, address, address, ids[idx],
+                            false, Bukkit.createProfile(ids[idx], "lt" + idx)));
+                    ready.add(idx);
+                });
+            }
+
+            long start = System.nanoTime();
+            for (Integer idx; (idx = ready.poll()) != null; ) {
+                Player p = fake.join(ids[idx], "lt" + idx, idx % 2 == 1); // half returning players
+                Bukkit.getPluginManager().callEvent(new PlayerJoinEvent(p, Component.empty()));
+                online.add(p);
+            }
+
+            actionCredit += online.size() * o.actionsPerPlayerSecond / 20.0;
+            for (; actionCredit >= 1; actionCredit--) {
+                Player p = online.get(rnd.nextInt(online.size()));
+                if (rnd.nextBoolean()) {
+                    run(plugin, p, bar, issued, "toggle");
+                } else {
+                    run(plugin, p, color, issued, COLORS[rnd.nextInt(COLORS.length)]);
+                }
+            }
+
+            for (int at : rangeTicks) {
+                if (tick == at) run(plugin, fake.console(), range, issued, String.valueOf(64 + rnd.nextInt(448)));
+            }
+
+            if (tick >= quitFrom) {
+                for (int n = 0; n < quitsPerTick && !online.isEmpty(); n++) {
+                    Player p = online.remove(rnd.nextInt(online.size()));
+                    Bukkit.getPluginManager().callEvent(new PlayerQuitEvent(p, Component.empty(), PlayerQuitEvent.QuitReason.DISCONNECTED));
+                    fake.quit(p.getUniqueId());
+                }
+            }
+
+            fake.tick();
+            long took = System.nanoTime() - start;
+            tickNanos[tick] = took;
+            fake.recordTick(took);
+
+            if (tick % 20 == 0) heapPeak = Math.max(heapPeak, memory.getHeapMemoryUsage().getUsed());
+            long sleep = o.tickMillis - took / 1_000_000L;
+            if (o.tickMillis > 0 && sleep > 0) Thread.sleep(sleep);
+        }
+        login.shutdown();
+        login.awaitTermination(1, TimeUnit.MINUTES);
+        scoreboard.finish();
+
+        long heapAfter = usedHeapAfterGc(memory);
+        long disableStart = System.nanoTime();
+        plugin.onDisable(); // final synchronous flush
+        long disableNanos = System.nanoTime() - disableStart;
+        long wallNanos = System.nanoTime() - wallStart;
+
+        Map<String, Object> report = report(o, tickNanos, wallNanos, disableNanos, fake, issued, scoreboard,
+                metrics, heapBefore, heapAfter, heapPeak, directorySize(o.data));
+        Files.createDirectories(o.out.toAbsolutePath().getParent());
+        Files.write(o.out, (json(report, 0) + "\n").getBytes(StandardCharsets.UTF_8));
+        System.out.println("Load test report written to " + o.out.toAbsolutePath());
+        System.out.println(json(report.get("main_thread"), 0));
+        System.exit(0); // storage pools or stray threads must not keep the JVM alive
+    }
+
+    private static Command command(String name) {
+        return new Command(name) {
+            @Override
+            public boolean execute(CommandSender sender, String label, String[] args) {
+                return false;
+            }
+        };
+    }
+
+    private static void run(LocatorBarTweaks plugin, CommandSender sender, Command cmd, Map<String, Long> issued, String arg) {
+        plugin.onCommand(sender, cmd, cmd.getName(), new String[]{arg});
+        issued.merge(cmd.getName(), 1L, Long::sum);
+    }
+
+    /** Default config.yml with the chosen storage backend and any --set overrides. */
+    private static void writeConfig(File dataFolder, Options o) throws IOException {
+        YamlConfiguration cfg;
+        try (InputStream in = LoadTest.class.getClassLoader().getResourceAsStream("config.yml");
+             Reader r = new InputStreamReader(Objects.requireNonNull(in, "config.yml not on the classpath"), StandardCharsets.UTF_8)) {
+            cfg = YamlConfiguration.loadConfiguration(r);
+        }
+        cfg.set("storage.type", o.storage);
+        for (Map.Entry<String, String> e : o.overrides.entrySet()) cfg.set(e.getKey(), scalar(e.getValue()));
+        cfg.save(new File(dataFolder, "config.yml"));
+    }
+
+    private static Object scalar(String v) {
+        if (v.equalsIgnoreCase("true") || v.equalsIgnoreCase("false")) return Boolean.parseBoolean(v);
+        try {
+            return Integer.parseInt(v);
+        } catch (NumberFormatException ignored) {
+        }
+        try {
+            return Double.parseDouble(v);
+        } catch (NumberFormatException ignored) {
+        }
+        return v;
+    }
+
+    // ---------------- Report ----------------
+    private static Map<String, Object> report(Options o, long[] tickNanos, long wallNanos, long disableNanos,
+                                              FakeServer fake, Map<String, Long> issued, Scoreboard scoreboard,
+                                              Metrics metrics, long heapBefore, long heapAfter, long heapPeak,
+                                              long diskBytes) {
+        Map<String, Object> run = new LinkedHashMap<>();
+        run.put("players", o.players);
+        run.put("ticks", o.ticks);
+        run.put("tick_millis", o.tickMillis);
+        run.put("storage", o.storage);
+        run.put("seed", o.seed);
+        run.put("action_rate", o.actionsPerPlayerSecond);
+        run.put("config_overrides", o.overrides);
+        run.put("wall_ms", wallNanos / 1_000_000L);
+        run.put("java", System.getProperty("java.version"));
+
+        long[] sorted = tickNanos.clone();
+        Arrays.sort(sorted);
+        long sum = 0;
+        int overBudget = 0;
+        for (long t : sorted) {
+            sum += t;
+            if (t > 50_000_000L) overBudget++;
+        }
+        Map<String, Object> main = new LinkedHashMap<>();
+        main.put("tick_mean_ms", ms(sorted.length == 0 ? 0 : sum / sorted.length));
+        main.put("tick_p50_ms", ms(quantile(sorted, 0.50)));
+        main.put("tick_p95_ms", ms(quantile(sorted, 0.95)));
+        main.put("tick_p99_ms", ms(quantile(sorted, 0.99)));
+        main.put("tick_max_ms", ms(sorted.length == 0 ? 0 : sorted[sorted.length - 1]));
+        main.put("ticks_over_50ms", overBudget);
+        main.put("total_ms", ms(sum));
+        main.put("disable_ms", ms(disableNanos));
+
+        Map<String, Object> commands = new LinkedHashMap<>();
+        long dispatchedTotal = 0;
+        Map<String, Object> byKind = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> e : fake.dispatched().entrySet()) {
+            byKind.put(e.getKey(), e.getValue().sum());
+            dispatchedTotal += e.getValue().sum();
+        }
+        Map<String, Object> attributeSets = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> e : fake.attributeSets().entrySet()) attributeSets.put(e.getKey(), e.getValue().sum());
+        commands.put("attribute_sets", attributeSets);
+        commands.put("dispatched_total", dispatchedTotal);
+        commands.put("dispatched", byKind);
+        commands.put("issued", issued);
+        commands.put("messages_sent", fake.messages());
+
+        Map<String, Object> placeholders = new LinkedHashMap<>();
+        placeholders.put("requests", scoreboard.latency.count());
+        placeholders.put("p50_ms", ms(scoreboard.latency.percentileNanos(0.50)));
+        placeholders.put("p99_ms", ms(scoreboard.latency.percentileNanos(0.99)));
+        placeholders.put("max_ms", ms(scoreboard.latency.maxNanos()));
+
+        Map<String, Object> storage = new LinkedHashMap<>();
+        storage.put("bytes_written", metrics.counter("storage_bytes_written").sum());
+        storage.put("rows_written", metrics.counter("storage_rows_written").sum());
+        storage.put("disk_bytes", diskBytes);
+
+        Map<String, Object> heap = new LinkedHashMap<>();
+        heap.put("before_bytes", heapBefore);
+        heap.put("after_bytes", heapAfter);
+        heap.put("growth_bytes", heapAfter - heapBefore);
+        heap.put("peak_sampled_bytes", heapPeak);
+
+        Map<String, Object> plugin = new LinkedHashMap<>();
+        Map<String, Object> counters = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> e : metrics.counters().entrySet()) counters.put(e.getKey(), e.getValue().sum());
+        Map<String, Object> gauges = new TreeMap<>();
+        for (Map.Entry<String, LongSupplier> e : metrics.gauges().entrySet()) gauges.put(e.getKey(), e.getValue().getAsLong());
+        Map<String, Object> timers = new TreeMap<>();
+        for (Map.Entry<String, Metrics.Timer> e : metrics.timers().entrySet()) {
+            Metrics.Timer t = e.getValue();
+            Map<String, Object> one = new LinkedHashMap<>();
+            one.put("count", t.count());
+            one.put("p50_ms", ms(t.percentileNanos(0.50)));
+            one.put("p99_ms", ms(t.percentileNanos(0.99)));
+            one.put("max_ms", ms(t.maxNanos()));
+            timers.put(e.getKey(), one);
+        }
+        plugin.put("counters", counters);
+        plugin.put("gauges", gauges);
+        plugin.put("timers", timers);
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("run", run);
+        report.put("main_thread", main);
+        report.put("commands", commands);
+        report.put("placeholders", placeholders);
+        report.put("storage", storage);
+        report.put("heap", heap);
+        report.put("plugin_metrics", plugin);
+        return report;
+    }
+
+    private static long quantile(long[] sorted, double q) {
+        if (sorted.length == 0) return 0;
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(q * sorted.length) - 1)];
+    }
+
+    private static double ms(long nanos) {
+        return Math.round(nanos / 1_000.0) / 1_000.0;
+    }
+
+    /** Minimal JSON for maps, strings, numbers and booleans. */
+    private static String json(Object v, int indent) {
+        if (v instanceof Map) {
+            Map<?, ?> m = (Map<?, ?>) v;
+            if (m.isEmpty()) return "{}";
+            String pad = "  ".repeat(indent + 1);
+            StringJoiner j = new StringJoiner(",\n", "{\n", "\n" + "  ".repeat(indent) + "}");
+            for (Map.Entry<?, ?> e : m.entrySet()) {
+                j.add(pad + quote(String.valueOf(e.getKey())) + ": " + json(e.getValue(), indent + 1));
+            }
+            return j.toString();
+        }
+        if (v instanceof Number || v instanceof Boolean) return String.valueOf(v);
+        return v == null ? "null" : quote(String.valueOf(v));
+    }
+
+    private static String quote(String s) {
+        StringBuilder b = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') b.append('\\').append(c);
+            else if (c < 0x20) b.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            else b.append(c);
+        }
+        return b.append('"').toString();
+    }
+
+    // ---------------- Helpers ----------------
+    /** Plugin internals the report reads; the plugin exposes no accessors for the harness. */
+    private static <T> T field(Object owner, String name, Class<T> type) throws ReflectiveOperationException {
+        Field f = owner.getClass().getDeclaredField(name);
+        f.setAccessible(true);
+        return type.cast(f.get(owner));
+    }
+
+    private static long usedHeapAfterGc(MemoryMXBean memory) {
+        for (int i = 0; i < 3; i++) System.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private static long directorySize(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) return 0;
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.filter(Files::isRegularFile).mapToLong(f -> f.toFile().length()).sum();
+        }
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) return;
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(f -> f.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package me.perch;
+
+/**
+ * Caps the locator range while the server is overloaded (adaptive.enabled).
+ * - Fed one MSPT sample per interval; decisions use the average of a full sliding window
+ * - Above highMspt the cap steps down toward the floor; below lowMspt it steps back up to the
+ *   configured range (the gap between the two thresholds is the hysteresis band)
+ * - After every change the window starts over, so each step is judged on fresh samples only
+ * - Main thread; {@link #cap()} may be read from any thread
+ */
+final class AdaptiveRange {
+
+    /** No cap: the configured range applies. */
+    static final int UNCAPPED = Integer.MAX_VALUE;
+
+    private final double[] window;
+    private final double highMspt;
+    private final double lowMspt;
+    private final int floor;
+    private final int step;
+
+    private int next = 0;
+    private int filled = 0;
+    private double lastAverage = 0;
+    private volatile int cap = UNCAPPED;
+
+    AdaptiveRange(int windowSamples, double highMspt, double lowMspt, int floor, int step) {
+        this.window = new double[Math.max(1, windowSamples)];
+        this.highMspt = highMspt;
+        this.lowMspt = Math.min(lowMspt, highMspt);
+        this.floor = Math.max(0, floor);
+        this.step = Math.max(1, step);
+    }
+
+    /** Current cap in blocks, or {@link #UNCAPPED}. */
+    int cap() {
+        return cap;
+    }
+
+    /** Range players actually get when they would otherwise get configured. */
+    int effective(int configured) {
+        return Math.min(configured, cap);
+    }
+
+    /** Average MSPT of the current window (0 until the first sample). */
+    double average() {
+        return lastAverage;
+    }
+
+    /** Record one sample; returns true if the cap changed. */
+    boolean sample(double mspt, int configured) {
+        window[next] = mspt;
+        next = (next + 1) % window.length;
+        if (filled < window.length) filled++;
+
+        double sum = 0;
+        for (int i = 0; i < filled; i++) sum += window[i];
+        lastAverage = sum / filled;
+        if (filled < window.length) return false;
+
+        int current = effective(configured);
+        int target = current;
+        if (lastAverage > highMspt) {
+            target = Math.max(Math.min(floor, configured), current - step);
+        } else if (lastAverage < lowMspt && current < configured) {
+            target = Math.min(configured, current + step);
+        }
+        int newCap = target >= configured ? UNCAPPED : target;
+        if (newCap == cap) return false;
+        cap = newCap;
+        filled = 0;
+        next = 0;
+        return true;
+    }
+}
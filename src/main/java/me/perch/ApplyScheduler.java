@@ -0,0 +1,204 @@
+package me.perch;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Queues per-player range/color updates and applies them within a per-tick time budget.
+ * - One pending entry per UUID; later writes to the same field overwrite earlier ones (last write wins)
+ * - Entries are applied in FIFO order, so everything queued before {@link #mark()} is done
+ *   once {@link #processed()} reaches that mark
+ * - Shadow state remembers what was last applied per player; updates that would not change
+ *   anything are skipped (attributes the applier can read back are compared against the live value)
+ * - Queue and counters belong to the global thread; {@link #run()} is scheduled every tick there.
+ *   Players owned by another region (Folia) are applied on their entity scheduler, so large rollouts
+ *   spread across region threads; progress then counts dispatched entries
+ */
+final class ApplyScheduler implements Runnable {
+
+    private static final int UNSET = -1;
+
+    private static final class Pending {
+        int receive = UNSET;
+        int transmit = UNSET;
+        WaypointColor color;
+    }
+
+    /** Last values we applied (or read back) for an online player. */
+    private static final class Applied {
+        int receive = UNSET;
+        int transmit = UNSET;
+        int color = UNKNOWN_COLOR;
+    }
+
+    private static final int UNKNOWN_COLOR = Integer.MIN_VALUE; // WaypointColor.NONE (-1) is a real value
+
+    private static final class Waiter {
+        final long mark;
+        final Runnable action;
+
+        Waiter(long mark, Runnable action) {
+            this.mark = mark;
+            this.action = action;
+        }
+    }
+
+    private final Plugin plugin;
+    private final AttributeApplier applier;
+    private final LinkedHashMap<UUID, Pending> queue = new LinkedHashMap<>();
+    // written on the player's owning thread, cleared from the global thread
+    private final ConcurrentHashMap<UUID, Applied> shadow = new ConcurrentHashMap<>();
+    private final LongAdder skipped;
+    private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+    private long budgetNanos;
+
+    // monotonic counters: entries ever queued / entries ever taken off the queue
+    private long inserted = 0;
+    private long processed = 0;
+
+    ApplyScheduler(Plugin plugin, AttributeApplier applier, double budgetMillis, Metrics metrics) {
+        this.plugin = plugin;
+        this.applier = applier;
+        this.skipped = metrics.counter("apply_skipped");
+        setBudgetMillis(budgetMillis);
+    }
+
+    void setBudgetMillis(double budgetMillis) {
+        this.budgetNanos = (long) (Math.max(0.05, budgetMillis) * 1_000_000L);
+    }
+
+    // ---------------- Enqueue ----------------
+    void receiveRange(UUID id, int range) {
+        pending(id).receive = range;
+    }
+
+    void transmitRange(UUID id, int range) {
+        pending(id).transmit = range;
+    }
+
+    void color(UUID id, WaypointColor color) {
+        pending(id).color = color;
+    }
+
+    private Pending pending(UUID id) {
+        Pending p = queue.get(id);
+        if (p == null) {
+            p = new Pending();
+            queue.put(id, p);
+            inserted++;
+        }
+        return p;
+    }
+
+    /** Forget what was applied (quit, world change): the next update is compared against live values again. */
+    void forget(UUID id) {
+        shadow.remove(id);
+    }
+
+    // ---------------- Progress ----------------
+    /** Position of the most recently queued entry. */
+    long mark() {
+        return inserted;
+    }
+
+    long processed() {
+        return processed;
+    }
+
+    int size() {
+        return queue.size();
+    }
+
+    /** Run action once every entry queued up to mark has been applied (immediately if already done). */
+    void whenProcessed(long mark, Runnable action) {
+        if (processed >= mark) {
+            action.run();
+        } else {
+            waiters.add(new Waiter(mark, action));
+        }
+    }
+
+    // ---------------- Drain ----------------
+    @Override
+    public void run() {
+        if (queue.isEmpty()) return;
+        long deadline = System.nanoTime() + budgetNanos;
+        Iterator<Map.Entry<UUID, Pending>> it = queue.entrySet().iterator();
+        // Always make progress: at least one entry per tick, even with a tiny budget
+        do {
+            Map.Entry<UUID, Pending> e = it.next();
+            it.remove();
+            apply(e.getKey(), e.getValue());
+        } while (it.hasNext() && System.nanoTime() < deadline);
+        fireWaiters();
+    }
+
+    /**
+     * Apply everything this thread owns now, ignoring the budget (shutdown). Players owned by another
+     * region (Folia) are skipped: a disabling plugin cannot schedule on them any more, and their stored
+     * state is re-applied (reconcile) on the next join or enable.
+     */
+    void drainAll() {
+        for (Map.Entry<UUID, Pending> e : queue.entrySet()) {
+            processed++;
+            Player player = Bukkit.getPlayer(e.getKey());
+            if (player != null && Bukkit.isOwnedByCurrentRegion(player)) applyOwned(e.getKey(), e.getValue());
+        }
+        queue.clear();
+        fireWaiters();
+    }
+
+    private void apply(UUID id, Pending p) {
+        processed++;
+        Player player = Bukkit.getPlayer(id);
+        if (player == null) return; // went offline while queued
+        if (Bukkit.isOwnedByCurrentRegion(player)) {
+            applyOwned(id, p);
+        } else {
+            player.getScheduler().run(plugin, t -> applyOwned(id, p), null);
+        }
+    }
+
+    /** On the thread that owns the player. */
+    private void applyOwned(UUID id, Pending p) {
+        Applied a = shadow.computeIfAbsent(id, k -> new Applied());
+
+        if (p.receive != UNSET) {
+            if (a.receive == UNSET) a.receive = applier.currentReceiveRange(id);
+            if (a.receive != p.receive) {
+                applier.setReceiveRange(id, p.receive);
+                a.receive = p.receive;
+            } else {
+                skipped.increment();
+            }
+        }
+        if (p.transmit != UNSET) {
+            if (a.transmit == UNSET) a.transmit = applier.currentTransmitRange(id);
+            if (a.transmit != p.transmit) {
+                applier.setTransmitRange(id, p.transmit);
+                a.transmit = p.transmit;
+            } else {
+                skipped.increment();
+            }
+        }
+        if (p.color != null) {
+            if (a.color != p.color.packed()) {
+                applier.setWaypointColor(id, p.color);
+                a.color = p.color.packed();
+            } else {
+                skipped.increment();
+            }
+        }
+    }
+
+    private void fireWaiters() {
+        while (!waiters.isEmpty() && waiters.peek().mark <= processed) {
+            waiters.poll().action.run();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package me.perch;
+
+import org.bukkit.NamespacedKey;
+import org.bukkit.Registry;
+import org.bukkit.attribute.Attribute;
+import org.bukkit.plugin.Plugin;
+
+import java.util.UUID;
+
+/**
+ * Applies locator bar attributes/colors to online players, addressed by UUID.
+ * Use {@link #detect(Plugin, Metrics)} to get the fastest implementation the running server supports.
+ * Calls are made on the thread that owns the player (main thread on Paper, the player's region on Folia).
+ */
+interface AttributeApplier {
+
+    void setReceiveRange(UUID id, int range);
+
+    void setTransmitRange(UUID id, int range);
+
+    /** {@link WaypointColor#RESET} restores the vanilla default. */
+    void setWaypointColor(UUID id, WaypointColor color);
+
+    /** Live base value of the receive range, or -1 if it cannot be read (command fallback). */
+    default int currentReceiveRange(UUID id) {
+        return -1;
+    }
+
+    /** Live base value of the transmit range, or -1 if it cannot be read. */
+    default int currentTransmitRange(UUID id) {
+        return -1;
+    }
+
+    /** Short name for logging. */
+    String describe();
+
+    /**
+     * Probe the server once at startup:
+     * - waypoint attributes present in the attribute registry -> typed AttributeInstance#setBaseValue
+     * - otherwise (older API/registry lookups unsupported) -> vanilla commands through the console
+     */
+    static AttributeApplier detect(Plugin plugin, Metrics metrics) {
+        CommandAttributeApplier commands = new CommandAttributeApplier(plugin, metrics);
+        try {
+            Attribute receive = Registry.ATTRIBUTE.get(NamespacedKey.minecraft("waypoint_receive_range"));
+            Attribute transmit = Registry.ATTRIBUTE.get(NamespacedKey.minecraft("waypoint_transmit_range"));
+            if (receive != null && transmit != null) {
+                return new DirectAttributeApplier(receive, transmit, commands, metrics);
+            }
+        } catch (Throwable t) {
+            plugin.getLogger().fine("Attribute registry lookup failed: " + t);
+        }
+        return commands;
+    }
+}
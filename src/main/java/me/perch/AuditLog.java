@@ -0,0 +1,284 @@
+package me.perch;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Audit trail of player state changes (audit.*): who, what, old -> new, when and why.
+ * - {@link #record} is lock-free and allocation-free: a bounded multi-producer ring of primitive slots
+ *   (per-slot sequence numbers); when the ring is full the record is dropped and counted, never waited for
+ * - One daemon thread drains the ring every flush interval into gzip files (audit/audit-*.log.gz, one per
+ *   start and rotated by size, oldest deleted beyond max-files) and into a bounded in-memory window
+ *   used by {@link #history}
+ * - Records still in the ring (at most one flush interval old) are not visible to history yet
+ */
+final class AuditLog implements Runnable {
+
+    enum Field { BAR, RANGE, COLOR }
+
+    enum Source { COMMAND, JOIN, ROLLOUT, API, RELOAD, OTHER }
+
+    /** A drained record (immutable). Values: BAR 1/0, RANGE blocks or -1 if unset, COLOR packed. */
+    static final class Entry {
+        final long time;
+        final UUID player;
+        final Field field;
+        final Source source;
+        final int oldValue;
+        final int newValue;
+
+        Entry(long time, UUID player, Field field, Source source, int oldValue, int newValue) {
+            this.time = time;
+            this.player = player;
+            this.field = field;
+            this.source = source;
+            this.oldValue = oldValue;
+            this.newValue = newValue;
+        }
+
+        String oldText() { return format(field, oldValue); }
+
+        String newText() { return format(field, newValue); }
+
+        static String format(Field field, int v) {
+            switch (field) {
+                case BAR: return v != 0 ? "ON" : "OFF";
+                case RANGE: return v < 0 ? "unset" : String.valueOf(v);
+                default: return WaypointColor.of(v).raw();
+            }
+        }
+    }
+
+    private static final Field[] FIELDS = Field.values();
+    private static final Source[] SOURCES = Source.values();
+    private static final DateTimeFormatter FILE_STAMP =
+            DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss").withZone(ZoneOffset.UTC);
+
+    // ring: slot i is writable by the producer at position p when sequence[i] == p, readable when == p + 1
+    private final int mask;
+    private final AtomicLongArray sequence;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head = 0; // written by the drain thread only
+    private final long[] times;
+    private final UUID[] players;
+    private final byte[] kinds; // field << 4 | source
+    private final int[] olds;
+    private final int[] news;
+
+    private final LongAdder recorded;
+    private final LongAdder dropped;
+
+    // drain thread state
+    private final File dir;
+    private final long maxFileBytes;
+    private final int maxFiles;
+    private final long flushNanos;
+    private final Logger logger;
+    private final LongAdder bytesWritten;
+    private OutputStream out;
+    private CountingStream counter;
+
+    private final int historySize;
+    private final ArrayDeque<Entry> recent = new ArrayDeque<>(); // guarded by itself
+
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    AuditLog(File dir, int capacity, int historySize, long maxFileBytes, int maxFiles, long flushMillis,
+             Logger logger, Metrics metrics) {
+        int cap = 64;
+        while (cap < capacity && cap < (1 << 20)) cap <<= 1;
+        this.mask = cap - 1;
+        this.sequence = new AtomicLongArray(cap);
+        for (int i = 0; i < cap; i++) sequence.set(i, i);
+        this.times = new long[cap];
+        this.players = new UUID[cap];
+        this.kinds = new byte[cap];
+        this.olds = new int[cap];
+        this.news = new int[cap];
+        this.recorded = metrics.counter("audit_recorded");
+        this.dropped = metrics.counter("audit_dropped");
+        this.bytesWritten = metrics.counter("audit_bytes_written");
+        this.dir = dir;
+        this.maxFileBytes = Math.max(4096L, maxFileBytes);
+        this.maxFiles = Math.max(1, maxFiles);
+        this.flushNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(50L, flushMillis));
+        this.historySize = Math.max(0, historySize);
+        this.logger = logger;
+        metrics.gauge("audit_backlog", () -> tail.get() - head);
+        this.thread = new Thread(this, "PerchLocator-Audit");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    // ---------------- Producers (any thread) ----------------
+    /** Queue one change; returns false (and counts a drop) if the ring is full. Never blocks. */
+    boolean record(UUID player, Field field, Source source, int oldValue, int newValue) {
+        long pos = tail.get();
+        int idx;
+        while (true) {
+            idx = (int) (pos & mask);
+            long diff = sequence.get(idx) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) break;
+                pos = tail.get();
+            } else if (diff < 0) {
+                dropped.increment(); // the drain thread is a full lap behind
+                return false;
+            } else {
+                pos = tail.get(); // another producer took this slot
+            }
+        }
+        times[idx] = System.currentTimeMillis();
+        players[idx] = player;
+        kinds[idx] = (byte) (field.ordinal() << 4 | source.ordinal());
+        olds[idx] = oldValue;
+        news[idx] = newValue;
+        sequence.set(idx, pos + 1); // publish
+        recorded.increment();
+        return true;
+    }
+
+    // ---------------- Queries ----------------
+    /** The player's most recent drained records, newest first. */
+    List<Entry> history(UUID player, int limit) {
+        List<Entry> out = new ArrayList<>();
+        synchronized (recent) {
+            Iterator<Entry> it = recent.descendingIterator();
+            while (it.hasNext() && out.size() < limit) {
+                Entry e = it.next();
+                if (e.player.equals(player)) out.add(e);
+            }
+        }
+        return out;
+    }
+
+    // ---------------- Drain thread ----------------
+    @Override
+    public void run() {
+        while (running) {
+            drain();
+            LockSupport.parkNanos(this, flushNanos);
+        }
+        drain();
+        closeFile();
+    }
+
+    /** Stop the drain thread after a last drain (onDisable). */
+    void close() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain() {
+        StringBuilder lines = new StringBuilder();
+        List<Entry> batch = new ArrayList<>();
+        while (true) {
+            int idx = (int) (head & mask);
+            if (sequence.get(idx) != head + 1) break; // empty, or the producer has not published yet
+            int kind = kinds[idx];
+            Entry e = new Entry(times[idx], players[idx], FIELDS[kind >> 4], SOURCES[kind & 0xF], olds[idx], news[idx]);
+            players[idx] = null;
+            sequence.set(idx, head + mask + 1); // free the slot for the next lap
+            head++;
+            batch.add(e);
+            lines.append(Instant.ofEpochMilli(e.time)).append('\t').append(e.player).append('\t')
+                    .append(e.source.name().toLowerCase(Locale.ROOT)).append('\t')
+                    .append(e.field.name().toLowerCase(Locale.ROOT)).append('\t')
+                    .append(e.oldText()).append(" -> ").append(e.newText()).append('\n');
+        }
+        if (batch.isEmpty()) return;
+        if (historySize > 0) {
+            synchronized (recent) {
+                recent.addAll(batch);
+                while (recent.size() > historySize) recent.pollFirst();
+            }
+        }
+        write(lines.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void write(byte[] bytes) {
+        try {
+            if (out != null && counter.count >= maxFileBytes) closeFile();
+            if (out == null) openFile();
+            long before = counter.count;
+            out.write(bytes);
+            out.flush(); // sync flush: everything up to here is readable even if the server dies
+            bytesWritten.add(counter.count - before);
+        } catch (IOException e) {
+            logger.warning("Audit log write failed: " + e.getMessage());
+            closeFile();
+        }
+    }
+
+    private void openFile() throws IOException {
+        Files.createDirectories(dir.toPath());
+        // audit-<stamp>-<seq>.log.gz: a zero-padded sequence keeps same-second rotations in name order
+        String stamp = FILE_STAMP.format(Instant.now());
+        File f;
+        int n = 0;
+        do {
+            f = new File(dir, String.format(Locale.ROOT, "audit-%s-%03d.log.gz", stamp, n++));
+        } while (f.exists());
+        counter = new CountingStream(new FileOutputStream(f));
+        out = new GZIPOutputStream(counter, 8192, true);
+        pruneOldFiles();
+    }
+
+    private void closeFile() {
+        if (out == null) return;
+        try {
+            out.close();
+        } catch (IOException e) {
+            logger.warning("Audit log close failed: " + e.getMessage());
+        }
+        out = null;
+    }
+
+    private void pruneOldFiles() {
+        File[] files = dir.listFiles((d, name) -> name.startsWith("audit-") && name.endsWith(".log.gz"));
+        if (files == null || files.length <= maxFiles) return;
+        Arrays.sort(files, Comparator.comparing(File::getName)); // stamp + padded sequence: names sort by age
+        for (int i = 0; i < files.length - maxFiles; i++) {
+            if (!files[i].delete()) logger.warning("Could not delete old audit log " + files[i].getName());
+        }
+    }
+
+    /** Compressed bytes written to the current file (rotation). */
+    private static final class CountingStream extends FilterOutputStream {
+        long count = 0;
+
+        CountingStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package me.perch;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * {@link LocatorBarService.Batch}: changes collected per player (last write per field wins) and handed to
+ * the plugin as one map on commit.
+ */
+final class ChangeBatch implements LocatorBarService.Batch {
+
+    static final int UNSET = Integer.MIN_VALUE; // range untouched
+    static final int RESET_RANGE = -1;          // follow the global range again
+
+    static final class Change {
+        Boolean enabled;
+        int range = UNSET;
+        WaypointColor color;
+    }
+
+    private final Function<Map<UUID, Change>, CompletableFuture<Void>> committer;
+    private final LinkedHashMap<UUID, Change> changes = new LinkedHashMap<>();
+    private boolean committed = false;
+
+    ChangeBatch(Function<Map<UUID, Change>, CompletableFuture<Void>> committer) {
+        this.committer = committer;
+    }
+
+    @Override
+    public @NotNull ChangeBatch setEnabled(@NotNull UUID player, boolean enabled) {
+        change(player).enabled = enabled;
+        return this;
+    }
+
+    @Override
+    public @NotNull ChangeBatch setRange(@NotNull UUID player, int range) {
+        if (range < 0) throw new IllegalArgumentException("Range must be >= 0: " + range);
+        change(player).range = range;
+        return this;
+    }
+
+    @Override
+    public @NotNull ChangeBatch resetRange(@NotNull UUID player) {
+        change(player).range = RESET_RANGE;
+        return this;
+    }
+
+    @Override
+    public @NotNull ChangeBatch setColor(@NotNull UUID player, @NotNull String color) {
+        WaypointColor c = WaypointColor.parse(color);
+        if (c == null) throw new IllegalArgumentException("Unknown color: " + color);
+        change(player).color = c;
+        return this;
+    }
+
+    @Override
+    public @NotNull ChangeBatch setColorRgb(@NotNull UUID player, int rgb) {
+        change(player).color = rgb == LocatorBarService.NO_COLOR ? WaypointColor.RESET : WaypointColor.of(rgb & 0xFFFFFF);
+        return this;
+    }
+
+    @Override
+    public @NotNull CompletableFuture<Void> commit() {
+        if (committed) throw new IllegalStateException("Batch already committed");
+        committed = true;
+        if (changes.isEmpty()) return CompletableFuture.completedFuture(null);
+        return committer.apply(changes);
+    }
+
+    private Change change(UUID player) {
+        Objects.requireNonNull(player, "player");
+        if (committed) throw new IllegalStateException("Batch already committed");
+        return changes.computeIfAbsent(player, k -> new Change());
+    }
+}
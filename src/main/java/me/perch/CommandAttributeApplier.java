@@ -0,0 +1,54 @@
+package me.perch;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+
+import java.util.UUID;
+
+/**
+ * Fallback applier: vanilla /attribute and /waypoint commands run as console.
+ * Targets are UUID selectors, so no name lookup is needed.
+ * Console commands must run on the global thread, so calls from a region thread (Folia) are handed over.
+ */
+final class CommandAttributeApplier implements AttributeApplier {
+
+    private final Plugin plugin;
+    private final Metrics.Timer receiveTimer;
+    private final Metrics.Timer transmitTimer;
+    private final Metrics.Timer colorTimer;
+
+    CommandAttributeApplier(Plugin plugin, Metrics metrics) {
+        this.plugin = plugin;
+        this.receiveTimer = metrics.timer("dispatch_receive");
+        this.transmitTimer = metrics.timer("dispatch_transmit");
+        this.colorTimer = metrics.timer("dispatch_color");
+    }
+
+    @Override
+    public void setReceiveRange(UUID id, int range) {
+        dispatch("attribute " + id + " minecraft:waypoint_receive_range base set " + range, receiveTimer);
+    }
+
+    @Override
+    public void setTransmitRange(UUID id, int range) {
+        dispatch("attribute " + id + " minecraft:waypoint_transmit_range base set " + range, transmitTimer);
+    }
+
+    @Override
+    public void setWaypointColor(UUID id, WaypointColor color) {
+        dispatch("waypoint modify " + id + " color " + color.commandArg(), colorTimer);
+    }
+
+    private void dispatch(String command, Metrics.Timer timer) {
+        GlobalThread.run(plugin, () -> {
+            long start = System.nanoTime();
+            Bukkit.dispatchCommand(Bukkit.getConsoleSender(), command);
+            timer.since(start);
+        });
+    }
+
+    @Override
+    public String describe() {
+        return "commands";
+    }
+}
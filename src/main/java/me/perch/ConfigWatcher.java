@@ -0,0 +1,73 @@
+package me.perch;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches config.yml for edits (reload.watch-file) on a daemon thread.
+ * - Editors often save in several steps (truncate, write, rename); events are debounced so one save
+ *   means one callback
+ * - The callback only signals a change; the plugin re-reads and diffs the file on the global thread
+ */
+final class ConfigWatcher implements Runnable {
+
+    private final Path file;
+    private final long debounceMillis;
+    private final Runnable changed;
+    private final WatchService watch;
+    private final Thread thread;
+
+    private ConfigWatcher(Path file, long debounceMillis, Runnable changed) throws IOException {
+        this.file = file.getFileName();
+        this.debounceMillis = Math.max(0L, debounceMillis);
+        this.changed = changed;
+        this.watch = file.getFileSystem().newWatchService();
+        // Watch the folder: editors that replace the file would orphan a watch on the file itself
+        file.toAbsolutePath().getParent().register(watch,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        this.thread = new Thread(this, "PerchLocator-ConfigWatcher");
+        this.thread.setDaemon(true);
+    }
+
+    static ConfigWatcher start(Path file, long debounceMillis, Runnable changed) throws IOException {
+        ConfigWatcher w = new ConfigWatcher(file, debounceMillis, changed);
+        w.thread.start();
+        return w;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                if (!touchesFile(watch.take())) continue;
+                // Let the editor finish: wait until the folder has been quiet for the debounce period
+                WatchKey more;
+                while ((more = watch.poll(debounceMillis, TimeUnit.MILLISECONDS)) != null) {
+                    touchesFile(more);
+                }
+                changed.run();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        }
+    }
+
+    private boolean touchesFile(WatchKey key) {
+        boolean hit = false;
+        for (WatchEvent<?> e : key.pollEvents()) {
+            if (file.equals(e.context())) hit = true;
+        }
+        key.reset();
+        return hit;
+    }
+
+    void close() {
+        try {
+            watch.close();
+        } catch (IOException ignored) {
+            // the thread exits either way
+        }
+        thread.interrupt();
+    }
+}
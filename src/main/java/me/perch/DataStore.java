@@ -0,0 +1,114 @@
+package me.perch;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Persistence backend for per-player locator state.
+ * All methods are called from the main thread; implementations do their own I/O off-thread.
+ * - Mutation hooks (disabledChanged/rangeChanged/colorChanged/lastSeenChanged) must be O(1)
+ * - flush() is called on the flush timer; the snapshot supplier is only invoked if the backend needs full state
+ */
+interface DataStore {
+
+    /** Reads persisted state into the given store. */
+    void load(PlayerStateStore into, int defaultRange);
+
+    void disabledChanged(UUID id, boolean disabled);
+
+    /** epoch: global range epoch the range was set under, or {@link PlayerState#CUSTOM_EPOCH}. */
+    void rangeChanged(UUID id, int range, int epoch);
+
+    /** color may be {@link WaypointColor#RESET} (cleared). */
+    void colorChanged(UUID id, WaypointColor color);
+
+    /** day: UTC epoch day the player joined or quit. */
+    void lastSeenChanged(UUID id, int day);
+
+    /** Push pending changes to disk (asynchronously). */
+    void flush(Supplier<Snapshot> state);
+
+    /**
+     * Retention pass, run after resident records were already filtered by the same policy.
+     * state holds every resident record: eager stores rewrite storage from it, lazy stores apply the
+     * policy to the records they hold on disk for everyone else. done is called once, on any thread.
+     */
+    void compact(RetentionPolicy policy, Snapshot state, Consumer<CompactionResult> done);
+
+    /** Drain pending writes and persist the final state synchronously. */
+    void close(Snapshot finalState);
+
+    /** True if load() reads nothing up front and records are loaded per player with {@link #loadPlayer(UUID)}. */
+    default boolean isLazy() {
+        return false;
+    }
+
+    /**
+     * Lazy stores only; any thread. Returns the player's persisted record (EMPTY if none),
+     * or null if the resident record has unsaved changes and must be kept.
+     * @throws IOException if storage could not be read; the player must not be treated as having no record
+     */
+    default PlayerState loadPlayer(UUID id) throws IOException {
+        return null;
+    }
+
+    /**
+     * Lazy stores only; main thread. The player left this server: stores shared between servers
+     * write the record now, so the next server's pre-login read sees it.
+     */
+    default void playerQuit(UUID id) {
+    }
+
+    /**
+     * Records are shared with other servers, each with its own config.yml (global range, range epoch).
+     * Non-custom ranges then follow the local global range when read and are never rewritten by epoch
+     * propagation; retention judges defaults without comparing against a server's global range.
+     */
+    default boolean isShared() {
+        return false;
+    }
+
+    /** Lazy stores only; main thread. Retention dropped the resident record: delete it from storage as well. */
+    default void recordRemoved(UUID id) {
+    }
+
+    /** Copy of the plugin's player state at one point in time (records are immutable). */
+    final class Snapshot {
+        final Map<UUID, PlayerState> states;
+
+        Snapshot(Map<UUID, PlayerState> states) {
+            this.states = states;
+        }
+    }
+
+    /** Outcome of {@link #compact}: records dropped from storage only (not resident) and storage size. */
+    final class CompactionResult {
+        static final long UNKNOWN = -1;
+
+        final int removed;
+        final long bytesBefore;
+        final long bytesAfter;
+
+        CompactionResult(int removed, long bytesBefore, long bytesAfter) {
+            this.removed = removed;
+            this.bytesBefore = bytesBefore;
+            this.bytesAfter = bytesAfter;
+        }
+    }
+
+    /** Replace target with tmp, atomically where the filesystem allows it. */
+    static void moveAtomically(Path tmp, Path target) throws IOException {
+        try {
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package me.perch;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Player counts per grid cell, kept up to date incrementally as players cross cell borders.
+ * - Cells are square (cellSize blocks, a power of two) and keyed per world
+ * - {@link #update} is O(1) and only touches the map when the player's cell actually changed
+ * - Cells whose population changed are remembered until {@link #drainAffected}, so callers only
+ *   re-evaluate players near a change
+ * - {@link #rangeFor} walks rings of cells outward and stops as soon as the waypoint limit is hit
+ * - Main thread only
+ */
+final class DensityGrid {
+
+    private static final class Pos {
+        final UUID world;
+        final int cx;
+        final int cz;
+
+        Pos(UUID world, int cx, int cz) {
+            this.world = world;
+            this.cx = cx;
+            this.cz = cz;
+        }
+    }
+
+    private final int shift;
+    private final int cellSize;
+    private final HashMap<UUID, HashMap<Long, HashSet<UUID>>> cells = new HashMap<>();
+    private final HashMap<UUID, int[]> population = new HashMap<>();
+    private final HashMap<UUID, Pos> positions = new HashMap<>();
+    private final HashMap<UUID, HashSet<Long>> dirty = new HashMap<>(); // per world: cells entered or left
+
+    /** cellSize is rounded up to a power of two (minimum 8). */
+    DensityGrid(int cellSize) {
+        int s = 3;
+        while ((1 << s) < cellSize && s < 12) s++;
+        this.shift = s;
+        this.cellSize = 1 << s;
+    }
+
+    int shift() {
+        return shift;
+    }
+
+    int cellSize() {
+        return cellSize;
+    }
+
+    /** Record a player's position; returns true if they entered a different cell (or were not indexed). */
+    boolean update(UUID player, UUID world, int blockX, int blockZ) {
+        int cx = blockX >> shift;
+        int cz = blockZ >> shift;
+        Pos old = positions.get(player);
+        if (old != null && old.cx == cx && old.cz == cz && old.world.equals(world)) return false;
+        if (old != null) leave(player, old);
+        Pos now = new Pos(world, cx, cz);
+        positions.put(player, now);
+        cells.computeIfAbsent(world, k -> new HashMap<>()).computeIfAbsent(key(cx, cz), k -> new HashSet<>()).add(player);
+        population.computeIfAbsent(world, k -> new int[1])[0]++;
+        markDirty(now);
+        return true;
+    }
+
+    void remove(UUID player) {
+        Pos old = positions.remove(player);
+        if (old != null) leave(player, old);
+    }
+
+    private void leave(UUID player, Pos p) {
+        markDirty(p);
+        HashMap<Long, HashSet<UUID>> world = cells.get(p.world);
+        long k = key(p.cx, p.cz);
+        HashSet<UUID> c = world.get(k);
+        c.remove(player);
+        if (c.isEmpty()) world.remove(k);
+        int[] pop = population.get(p.world);
+        if (--pop[0] == 0) {
+            population.remove(p.world);
+            cells.remove(p.world);
+        }
+    }
+
+    private void markDirty(Pos p) {
+        dirty.computeIfAbsent(p.world, k -> new HashSet<>()).add(key(p.cx, p.cz));
+    }
+
+    /**
+     * Hand every player within rings cells of a cell whose population changed since the last call to
+     * action (a player may be reported more than once), and forget those cells.
+     */
+    void drainAffected(int rings, Consumer<UUID> action) {
+        for (Map.Entry<UUID, HashSet<Long>> e : dirty.entrySet()) {
+            HashMap<Long, HashSet<UUID>> world = cells.get(e.getKey());
+            if (world == null) continue; // world emptied
+            for (long k : e.getValue()) {
+                int cx = (int) (k >> 32);
+                int cz = (int) k;
+                for (int x = cx - rings; x <= cx + rings; x++) {
+                    for (int z = cz - rings; z <= cz + rings; z++) {
+                        HashSet<UUID> c = world.get(key(x, z));
+                        if (c != null) c.forEach(action);
+                    }
+                }
+            }
+        }
+        dirty.clear();
+    }
+
+    boolean contains(UUID player) {
+        return positions.containsKey(player);
+    }
+
+    /**
+     * Largest range (blocks, at most maxRange) at which the player sees roughly no more than
+     * maxWaypoints other players, judged at cell granularity; never below minRange.
+     * Returns maxRange if the limit is not reached within it.
+     */
+    int rangeFor(UUID player, int maxRange, int maxWaypoints, int minRange) {
+        Pos p = positions.get(player);
+        if (p == null) return maxRange;
+        int[] pop = population.get(p.world);
+        if (pop == null || pop[0] - 1 <= maxWaypoints) return maxRange; // sparse world: nothing to limit
+
+        HashMap<Long, HashSet<UUID>> world = cells.get(p.world);
+        int seen = count(world, p.cx, p.cz) - 1;
+        if (seen > maxWaypoints) return Math.min(maxRange, minRange);
+        int rings = (maxRange + cellSize - 1) >> shift;
+        for (int r = 1; r <= rings; r++) {
+            for (int d = -r; d <= r; d++) {
+                seen += count(world, p.cx + d, p.cz - r) + count(world, p.cx + d, p.cz + r);
+            }
+            for (int d = -r + 1; d <= r - 1; d++) {
+                seen += count(world, p.cx - r, p.cz + d) + count(world, p.cx + r, p.cz + d);
+            }
+            // Ring r would push us over the limit: stop at the distance covered by the rings inside it
+            if (seen > maxWaypoints) return Math.min(maxRange, Math.max(minRange, r << shift));
+        }
+        return maxRange;
+    }
+
+    private static int count(HashMap<Long, HashSet<UUID>> world, int cx, int cz) {
+        HashSet<UUID> c = world.get(key(cx, cz));
+        return c == null ? 0 : c.size();
+    }
+
+    private static long key(int cx, int cz) {
+        return ((long) cx << 32) | (cz & 0xFFFFFFFFL);
+    }
+}
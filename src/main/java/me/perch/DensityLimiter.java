@@ -0,0 +1,150 @@
+package me.perch;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.*;
+import org.bukkit.plugin.Plugin;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * Per-player range caps for crowded areas (density.enabled).
+ * - Keeps a {@link DensityGrid} in sync from join/move/teleport/respawn/quit; moves within a cell cost
+ *   two shifts and compares
+ * - Recomputes caps within a per-tick time budget, only where something changed: players within
+ *   range of a cell someone entered or left (move, teleport, respawn, join, quit), plus players whose
+ *   uncapped range changed ({@link #invalidate}); nothing is scanned while nobody crosses a cell border
+ * - Only reports players whose cap actually changed
+ * - Index and caps belong to the global thread; events from region threads (Folia) hand over
+ *   the new cell coordinates
+ */
+final class DensityLimiter implements Listener, Runnable {
+
+    static final int UNCAPPED = Integer.MAX_VALUE;
+
+    private final Plugin plugin;
+    private final DensityGrid grid;
+    private final int maxWaypoints;
+    private final int minRange;
+    private final long budgetNanos;
+    private final ToIntFunction<UUID> maxRange; // per player: their range before the density cap
+    private final Consumer<UUID> changed;
+
+    private final HashMap<UUID, Integer> caps = new HashMap<>();
+    private final LinkedHashSet<UUID> pending = new LinkedHashSet<>();
+    private int reachRings = 0; // largest maxRange seen, in cells: how far a cell change can matter
+
+    DensityLimiter(Plugin plugin, DensityGrid grid, int maxWaypoints, int minRange, double budgetMillis,
+                   ToIntFunction<UUID> maxRange, Consumer<UUID> changed) {
+        this.plugin = plugin;
+        this.grid = grid;
+        this.maxWaypoints = Math.max(0, maxWaypoints);
+        this.minRange = Math.max(0, minRange);
+        this.budgetNanos = (long) (Math.max(0.05, budgetMillis) * 1_000_000L);
+        this.maxRange = maxRange;
+        this.changed = changed;
+    }
+
+    /** Current cap for the player in blocks, or {@link #UNCAPPED}. */
+    int cap(UUID id) {
+        Integer c = caps.get(id);
+        return c == null ? UNCAPPED : c;
+    }
+
+    int cappedPlayers() {
+        return caps.size();
+    }
+
+    // ---------------- Index maintenance ----------------
+    void track(Player p) {
+        track(p.getUniqueId(), p.getLocation());
+    }
+
+    private void track(UUID id, Location to) {
+        if (to == null || to.getWorld() == null) return;
+        UUID world = to.getWorld().getUID();
+        int x = to.getBlockX();
+        int z = to.getBlockZ();
+        GlobalThread.run(plugin, () -> {
+            grid.update(id, world, x, z);
+        });
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onMove(PlayerMoveEvent e) {
+        Location from = e.getFrom();
+        Location to = e.getTo();
+        int s = grid.shift();
+        // Hot path: most moves stay inside the same cell
+        if (to == null || ((from.getBlockX() >> s) == (to.getBlockX() >> s)
+                && (from.getBlockZ() >> s) == (to.getBlockZ() >> s)
+                && from.getWorld() == to.getWorld())) return;
+        track(e.getPlayer().getUniqueId(), to);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onTeleport(PlayerTeleportEvent e) {
+        track(e.getPlayer().getUniqueId(), e.getTo());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onRespawn(PlayerRespawnEvent e) {
+        track(e.getPlayer().getUniqueId(), e.getRespawnLocation());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onJoin(PlayerJoinEvent e) {
+        track(e.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent e) {
+        UUID id = e.getPlayer().getUniqueId();
+        GlobalThread.run(plugin, () -> {
+            grid.remove(id);
+            caps.remove(id);
+            pending.remove(id);
+        });
+    }
+
+    // ---------------- Time-sliced recompute ----------------
+    /** The player's uncapped range changed (own range, tier): recompute their cap. Global thread. */
+    void invalidate(UUID id) {
+        if (grid.contains(id)) pending.add(id);
+    }
+
+    /** Every uncapped range changed (global range, adaptive cap, reload): recompute all caps once. Global thread. */
+    void invalidateAll() {
+        for (Player p : Bukkit.getOnlinePlayers()) invalidate(p.getUniqueId());
+    }
+
+    @Override
+    public void run() {
+        grid.drainAffected(reachRings, pending::add);
+        if (pending.isEmpty()) return;
+        long deadline = System.nanoTime() + budgetNanos;
+        Iterator<UUID> it = pending.iterator();
+        do {
+            UUID id = it.next();
+            it.remove();
+            recompute(id);
+        } while (it.hasNext() && System.nanoTime() < deadline);
+    }
+
+    private void recompute(UUID id) {
+        if (!grid.contains(id)) return; // quit since it was queued
+        int max = maxRange.applyAsInt(id);
+        reachRings = Math.max(reachRings, (max + grid.cellSize() - 1) >> grid.shift());
+        int range = grid.rangeFor(id, max, maxWaypoints, minRange);
+        int cap = range >= max ? UNCAPPED : range;
+        if (cap == cap(id)) return;
+        if (cap == UNCAPPED) caps.remove(id); else caps.put(id, cap);
+        changed.accept(id);
+    }
+}
@@ -0,0 +1,75 @@
+package me.perch;
+
+import org.bukkit.Bukkit;
+import org.bukkit.attribute.Attribute;
+import org.bukkit.attribute.AttributeInstance;
+import org.bukkit.entity.Player;
+
+import java.util.UUID;
+
+/**
+ * Fast path: sets waypoint attributes through the typed Attribute API.
+ * - No command parsing, no name lookup, no console feedback
+ * - Waypoint color has no typed API, so it (and any player missing the attribute) falls back to commands
+ */
+final class DirectAttributeApplier implements AttributeApplier {
+
+    private final Attribute receive;
+    private final Attribute transmit;
+    private final AttributeApplier fallback;
+    private final Metrics.Timer timer;
+
+    DirectAttributeApplier(Attribute receive, Attribute transmit, AttributeApplier fallback, Metrics metrics) {
+        this.receive = receive;
+        this.transmit = transmit;
+        this.fallback = fallback;
+        this.timer = metrics.timer("attribute_set");
+    }
+
+    @Override
+    public void setReceiveRange(UUID id, int range) {
+        if (!setBase(id, receive, range)) fallback.setReceiveRange(id, range);
+    }
+
+    @Override
+    public void setTransmitRange(UUID id, int range) {
+        if (!setBase(id, transmit, range)) fallback.setTransmitRange(id, range);
+    }
+
+    @Override
+    public void setWaypointColor(UUID id, WaypointColor color) {
+        fallback.setWaypointColor(id, color);
+    }
+
+    @Override
+    public int currentReceiveRange(UUID id) {
+        return getBase(id, receive);
+    }
+
+    @Override
+    public int currentTransmitRange(UUID id) {
+        return getBase(id, transmit);
+    }
+
+    private int getBase(UUID id, Attribute attribute) {
+        Player p = Bukkit.getPlayer(id);
+        AttributeInstance inst = p != null ? p.getAttribute(attribute) : null;
+        return inst != null ? (int) Math.round(inst.getBaseValue()) : -1;
+    }
+
+    @Override
+    public String describe() {
+        return "attribute-api";
+    }
+
+    private boolean setBase(UUID id, Attribute attribute, int value) {
+        Player p = Bukkit.getPlayer(id);
+        if (p == null) return true; // offline: nothing to apply, commands would fail too
+        AttributeInstance inst = p.getAttribute(attribute);
+        if (inst == null) return false;
+        long start = System.nanoTime();
+        inst.setBaseValue(value);
+        timer.since(start);
+        return true;
+    }
+}
@@ -0,0 +1,85 @@
+package me.perch;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dirty-set bookkeeping for per-player (lazy) stores.
+ * - dirty: changed in memory, not yet captured for writing
+ * - inFlight: captured record, not yet confirmed written; served to loads so a quick rejoin never reads stale data
+ * - retrying: captured records whose write failed; re-sent as captured, because the player may already
+ *   have been unloaded from memory
+ */
+final class DirtyTracker {
+
+    private final Set<UUID> dirty = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<UUID, PlayerState> inFlight = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<UUID, PlayerState> retrying = new ConcurrentHashMap<>();
+
+    void mark(UUID id) {
+        dirty.add(id);
+    }
+
+    boolean isEmpty() {
+        return dirty.isEmpty() && retrying.isEmpty();
+    }
+
+    /** Resident record has unsaved changes; a load must not replace it. */
+    boolean isDirty(UUID id) {
+        return dirty.contains(id);
+    }
+
+    /** Record captured for writing but not yet durable, or null. */
+    PlayerState inFlight(UUID id) {
+        return inFlight.get(id);
+    }
+
+    /** Move all dirty players' current records into inFlight, plus any records waiting for a retry. */
+    Map<UUID, PlayerState> capture(PlayerStateStore players) {
+        Map<UUID, PlayerState> out = new HashMap<>();
+        for (Iterator<UUID> it = dirty.iterator(); it.hasNext(); ) {
+            UUID id = it.next();
+            out.put(id, capture(players, id));
+            it.remove();
+        }
+        for (Iterator<Map.Entry<UUID, PlayerState>> it = retrying.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<UUID, PlayerState> e = it.next();
+            out.putIfAbsent(e.getKey(), e.getValue()); // a fresh capture is newer
+            it.remove();
+        }
+        return out;
+    }
+
+    /** Capture a single player (returns null if not dirty). */
+    PlayerState captureOne(PlayerStateStore players, UUID id) {
+        if (!dirty.contains(id)) return retrying.remove(id);
+        PlayerState st = capture(players, id);
+        dirty.remove(id);
+        return st;
+    }
+
+    private PlayerState capture(PlayerStateStore players, UUID id) {
+        PlayerState st = players.get(id);
+        inFlight.put(id, st); // visible to loads before it leaves the dirty set
+        return st;
+    }
+
+    /** Records are durable: stop serving them from memory (unless re-captured since). */
+    void written(Map<UUID, PlayerState> records) {
+        for (Map.Entry<UUID, PlayerState> e : records.entrySet()) {
+            inFlight.remove(e.getKey(), e.getValue());
+        }
+    }
+
+    /** A write could not be queued/completed: send these records again on the next capture. */
+    void retry(Map<UUID, PlayerState> records) {
+        for (Map.Entry<UUID, PlayerState> e : records.entrySet()) {
+            // skip records superseded by a newer capture
+            if (inFlight.get(e.getKey()) == e.getValue()) retrying.put(e.getKey(), e.getValue());
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package me.perch;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+
+/**
+ * Plugin-wide state (queues, storage hooks, counters) is owned by the global region thread:
+ * the main thread on Paper, the global region scheduler's thread on Folia.
+ */
+final class GlobalThread {
+
+    private GlobalThread() {
+    }
+
+    /** Run now if already on the global thread, otherwise on its next tick. */
+    static void run(Plugin plugin, Runnable task) {
+        if (Bukkit.isGlobalTickThread()) {
+            task.run();
+        } else {
+            Bukkit.getGlobalRegionScheduler().execute(plugin, task);
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package me.perch;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Append-only journal + compacted snapshot persistence (storage.type: journal).
+ * - Every mutation is encoded as a small binary record into an in-memory buffer (O(1))
+ * - flush() appends the buffered records to data.journal on a background thread
+ * - Once the journal grows past the compaction threshold, full state is written to data.snapshot
+ *   (temp file + rename) and the journal is truncated
+ * - Startup reads the snapshot, then replays the journal; a torn tail record is cut off so appends
+ *   continue on a record boundary
+ * - Unreadable files are moved aside (*.corrupt-<millis>) instead of being overwritten by the next
+ *   compaction, so they can be recovered by hand
+ * - If neither file exists but data.yml does, it is migrated once and renamed to data.yml.migrated
+ */
+final class JournalDataStore implements DataStore {
+
+    private static final int SNAPSHOT_MAGIC = 0x504C4253; // "PLBS"
+    private static final byte SNAPSHOT_VERSION = 4; // v1: UTF colors, v1-2: no range epoch, v1-3: no last-seen day
+
+    // journal opcodes
+    private static final byte OP_DISABLED = 1;
+    private static final byte OP_ENABLED = 2;
+    private static final byte OP_RANGE = 3;       // legacy: range without epoch, read-only
+    private static final byte OP_COLOR_TEXT = 4; // legacy: UTF string, read-only
+    private static final byte OP_COLOR = 5;      // packed WaypointColor int
+    private static final byte OP_RANGE_EPOCH = 6; // range int + epoch int
+    private static final byte OP_SEEN = 7;        // last-seen epoch day int
+
+    // snapshot entry flags
+    private static final int F_DISABLED = 1;
+    private static final int F_RANGE = 1 << 1;
+    private static final int F_COLOR = 1 << 2;
+
+    private final File folder;
+    private final File snapshotFile;
+    private final File journalFile;
+    private final Logger log;
+    private final Metrics metrics;
+    private final long compactBytes;
+
+    // main-thread record buffer, handed to the writer on flush
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream(256);
+    private DataOutputStream pendingOut = new DataOutputStream(pending);
+    private long journalBytes = 0;
+    // set when an unreadable file could not be moved aside: never append after it or compact over it
+    private volatile boolean readOnly = false;
+
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "PerchLocator-JournalWriter");
+        t.setDaemon(true);
+        return t;
+    });
+
+    JournalDataStore(File folder, Logger log, Metrics metrics, long compactBytes) {
+        this.folder = folder;
+        this.snapshotFile = new File(folder, "data.snapshot");
+        this.journalFile = new File(folder, "data.journal");
+        this.log = log;
+        this.metrics = metrics;
+        this.compactBytes = Math.max(4096L, compactBytes);
+    }
+
+    // ---------------- Load ----------------
+    @Override
+    public void load(PlayerStateStore into, int defaultRange) {
+        folder.mkdirs();
+        File legacy = new File(folder, "data.yml");
+        if (!snapshotFile.exists() && !journalFile.exists() && legacy.exists()) {
+            migrateFromYaml(legacy, into, defaultRange);
+            return;
+        }
+
+        if (snapshotFile.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile), 1 << 16))) {
+                if (in.readInt() != SNAPSHOT_MAGIC) throw new IOException("bad snapshot header");
+                byte version = in.readByte();
+                if (version < 1 || version > SNAPSHOT_VERSION) throw new IOException("unsupported snapshot version " + version);
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    UUID id = new UUID(in.readLong(), in.readLong());
+                    int flags = in.readUnsignedByte();
+                    if ((flags & F_DISABLED) != 0) into.setDisabled(id, true);
+                    if ((flags & F_RANGE) != 0) into.setRange(id, in.readInt(), version >= 3 ? in.readInt() : 0);
+                    if ((flags & F_COLOR) != 0) into.setColor(id, version == 1 ? parseLegacy(in.readUTF()) : WaypointColor.of(in.readInt()));
+                    if (version >= 4) into.setLastSeen(id, in.readInt());
+                }
+            } catch (IOException e) {
+                log.severe("Failed to read data.snapshot: " + e.getMessage());
+                moveAside(snapshotFile);
+            }
+        }
+
+        if (journalFile.exists()) {
+            int replayed = 0;
+            long good = 0; // end of the last complete record
+            boolean corrupt = false;
+            CountingInputStream counted = null;
+            try (DataInputStream in = new DataInputStream(counted = new CountingInputStream(
+                    new BufferedInputStream(new FileInputStream(journalFile), 1 << 16)))) {
+                while (true) {
+                    int op = in.read();
+                    if (op < 0) break;
+                    UUID id = new UUID(in.readLong(), in.readLong());
+                    switch (op) {
+                        case OP_DISABLED: into.setDisabled(id, true); break;
+                        case OP_ENABLED: into.setDisabled(id, false); break;
+                        case OP_RANGE: into.setRange(id, in.readInt(), 0); break;
+                        case OP_RANGE_EPOCH: into.setRange(id, in.readInt(), in.readInt()); break;
+                        case OP_SEEN: into.setLastSeen(id, in.readInt()); break;
+                        case OP_COLOR_TEXT: into.setColor(id, parseLegacy(in.readUTF())); break;
+                        case OP_COLOR: into.setColor(id, WaypointColor.of(in.readInt())); break;
+                        default: throw new IOException("unknown journal op " + op);
+                    }
+                    replayed++;
+                    good = counted.count;
+                }
+            } catch (EOFException e) {
+                log.warning("data.journal ends with a partial record (crash during write?); dropping it.");
+            } catch (IOException e) {
+                log.severe("Failed to replay data.journal after " + replayed + " records: " + e.getMessage());
+                corrupt = true;
+            }
+            if (good < journalFile.length()) truncateJournal(good, corrupt);
+            journalBytes = journalFile.length();
+            if (replayed > 0) log.info("Replayed " + replayed + " journal records.");
+        }
+    }
+
+    /** Cut the journal back to its last complete record; a corrupt journal is copied aside first. */
+    private void truncateJournal(long good, boolean corrupt) {
+        try {
+            if (corrupt) {
+                File aside = new File(folder, journalFile.getName() + ".corrupt-" + System.currentTimeMillis());
+                Files.copy(journalFile.toPath(), aside.toPath());
+                log.severe("Copied the unreadable journal to " + aside.getName() + "; records after offset " + good + " were not loaded.");
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(journalFile, "rw")) {
+                raf.setLength(good);
+            }
+        } catch (IOException e) {
+            // Appending after garbage would make every later record unreadable: start a fresh journal instead
+            log.severe("Failed to truncate data.journal: " + e.getMessage());
+            moveAside(journalFile);
+        }
+    }
+
+    /** Keep an unreadable file for manual recovery; it must not be overwritten by the next compaction. */
+    private void moveAside(File file) {
+        File aside = new File(folder, file.getName() + ".corrupt-" + System.currentTimeMillis());
+        if (file.renameTo(aside)) {
+            log.severe("Moved " + file.getName() + " to " + aside.getName() + "; players in it start from defaults.");
+        } else {
+            readOnly = true;
+            log.severe("Could not move " + file.getName() + " aside; player data will NOT be saved until it is fixed by hand.");
+        }
+    }
+
+    private static WaypointColor parseLegacy(String raw) {
+        WaypointColor c = WaypointColor.parse(raw);
+        return c != null ? c : WaypointColor.RESET;
+    }
+
+    private void migrateFromYaml(File legacy, PlayerStateStore into, int defaultRange) {
+        new YamlDataStore(legacy, log, metrics).load(into, defaultRange);
+        try {
+            writeSnapshot(new Snapshot(into.copy()));
+            File done = new File(folder, "data.yml.migrated");
+            if (!legacy.renameTo(done)) log.warning("Could not rename data.yml to data.yml.migrated.");
+            log.info("Migrated data.yml to journal storage (" + into.size() + " players).");
+        } catch (IOException e) {
+            log.severe("Failed to migrate data.yml: " + e.getMessage());
+        }
+    }
+
+    // ---------------- Mutations ----------------
+    @Override
+    public void disabledChanged(UUID id, boolean disabled) {
+        try {
+            record(disabled ? OP_DISABLED : OP_ENABLED, id);
+        } catch (IOException ignored) {} // in-memory stream
+    }
+
+    @Override
+    public void rangeChanged(UUID id, int range, int epoch) {
+        try {
+            record(OP_RANGE_EPOCH, id);
+            pendingOut.writeInt(range);
+            pendingOut.writeInt(epoch);
+        } catch (IOException ignored) {}
+    }
+
+    @Override
+    public void colorChanged(UUID id, WaypointColor color) {
+        try {
+            record(OP_COLOR, id);
+            pendingOut.writeInt(color.packed());
+        } catch (IOException ignored) {}
+    }
+
+    @Override
+    public void lastSeenChanged(UUID id, int day) {
+        try {
+            record(OP_SEEN, id);
+            pendingOut.writeInt(day);
+        } catch (IOException ignored) {}
+    }
+
+    private void record(byte op, UUID id) throws IOException {
+        pendingOut.writeByte(op);
+        pendingOut.writeLong(id.getMostSignificantBits());
+        pendingOut.writeLong(id.getLeastSignificantBits());
+    }
+
+    // ---------------- Flush / compaction ----------------
+    @Override
+    public void flush(Supplier<Snapshot> state) {
+        if (pending.size() > 0) {
+            byte[] bytes = pending.toByteArray();
+            pending = new ByteArrayOutputStream(256);
+            pendingOut = new DataOutputStream(pending);
+            journalBytes += bytes.length;
+            writer.execute(() -> append(bytes));
+        }
+        if (journalBytes >= compactBytes) {
+            // Queued after the appends above, so the snapshot supersedes everything in the journal
+            Snapshot snapshot = state.get();
+            journalBytes = 0;
+            writer.execute(() -> compact(snapshot));
+        }
+    }
+
+    /** Everything is resident: write the filtered snapshot now; buffered records are all contained in it. */
+    @Override
+    public void compact(RetentionPolicy policy, Snapshot state, Consumer<CompactionResult> done) {
+        pending.reset();
+        journalBytes = 0;
+        writer.execute(() -> {
+            long before = snapshotFile.length() + journalFile.length();
+            compact(state);
+            done.accept(new CompactionResult(0, before, snapshotFile.length() + journalFile.length()));
+        });
+    }
+
+    @Override
+    public void close(Snapshot finalState) {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warning("Timed out waiting for pending journal writes.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Shutdown compaction: next startup only has to read the snapshot
+        compact(finalState);
+        pending.reset();
+    }
+
+    private void append(byte[] bytes) {
+        if (readOnly) return;
+        long start = System.nanoTime();
+        try (FileOutputStream out = new FileOutputStream(journalFile, true)) {
+            out.write(bytes);
+            metrics.counter("storage_bytes_written").add(bytes.length);
+        } catch (IOException e) {
+            log.severe("Failed to append to data.journal: " + e.getMessage());
+        }
+        metrics.timer("storage_write").since(start);
+    }
+
+    private void compact(Snapshot s) {
+        if (readOnly) {
+            log.warning("Not compacting: an unreadable data file could not be moved aside (see startup log).");
+            return;
+        }
+        try {
+            writeSnapshot(s);
+            Files.deleteIfExists(journalFile.toPath());
+        } catch (IOException e) {
+            log.severe("Failed to compact data.journal: " + e.getMessage());
+        }
+    }
+
+    /** Bytes consumed so far, to find the end of the last complete journal record. */
+    private static final class CountingInputStream extends FilterInputStream {
+        long count = 0;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    void writeSnapshot(Snapshot s) throws IOException {
+        long start = System.nanoTime();
+        File tmp = new File(folder, snapshotFile.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeByte(SNAPSHOT_VERSION);
+            out.writeInt(s.states.size());
+            for (Map.Entry<UUID, PlayerState> e : s.states.entrySet()) {
+                UUID id = e.getKey();
+                PlayerState st = e.getValue();
+                int flags = (st.isDisabled() ? F_DISABLED : 0)
+                        | (st.hasRange() ? F_RANGE : 0)
+                        | (st.hasColor() ? F_COLOR : 0);
+                out.writeLong(id.getMostSignificantBits());
+                out.writeLong(id.getLeastSignificantBits());
+                out.writeByte(flags);
+                if (st.hasRange()) {
+                    out.writeInt(st.range);
+                    out.writeInt(st.epoch);
+                }
+                if (st.hasColor()) out.writeInt(st.color);
+                out.writeInt(st.lastSeen);
+            }
+        }
+        metrics.counter("storage_bytes_written").add(tmp.length());
+        DataStore.moveAtomically(tmp.toPath(), snapshotFile.toPath());
+        metrics.timer("storage_write").since(start);
+    }
+}
@@ -0,0 +1,40 @@
+package me.perch;
+
+import org.bukkit.event.Event;
+import org.bukkit.event.HandlerList;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Players' locator state changed: bar ON/OFF, range or color, from commands, the {@link LocatorBarService},
+ * /locatorrange rollouts, range tiers, adaptive/density caps or a reload.
+ * - Fired on the server's global thread, at most once per tick: one event covers every player changed
+ *   during that tick (a rollout to thousands of players is a single event)
+ * - Read the new values through {@link LocatorBarService}
+ */
+public final class LocatorBarChangeEvent extends Event {
+
+    private static final HandlerList HANDLERS = new HandlerList();
+
+    private final Set<UUID> players;
+
+    public LocatorBarChangeEvent(@NotNull Set<UUID> players) {
+        this.players = players;
+    }
+
+    /** Players whose state changed (unmodifiable). */
+    public @NotNull Set<UUID> getPlayers() {
+        return players;
+    }
+
+    @Override
+    public @NotNull HandlerList getHandlers() {
+        return HANDLERS;
+    }
+
+    public static @NotNull HandlerList getHandlerList() {
+        return HANDLERS;
+    }
+}
@@ -0,0 +1,82 @@
+package me.perch;
+
+import org.bukkit.ChatColor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Typed access to locator state for other plugins (menus, HUDs), registered with Bukkit's ServicesManager:
+ * {@code Bukkit.getServicesManager().load(LocatorBarService.class)}.
+ * - Reads are allocation-free and safe from any thread; they return the stored state, including changes
+ *   still waiting in the apply queue. Offline players on lazy storage (sharded/sql) read as defaults
+ * - Writes go through a {@link Batch}: all changes are stored together (one write-behind flush) and
+ *   queued for application in one pass
+ * - Every change, whatever its source, is announced by a {@link LocatorBarChangeEvent}
+ */
+public interface LocatorBarService {
+
+    /** {@link #getColorRgb} value when the player has no color (vanilla default). */
+    int NO_COLOR = -1;
+
+    /** Whether the player's locator bar is ON (what they receive; others always see them). */
+    boolean isEnabled(@NotNull UUID player);
+
+    /**
+     * Range the player receives in blocks: 0 while the bar is OFF, otherwise their own range (remembered,
+     * global or permission tier), capped while the server is overloaded.
+     */
+    int getRange(@NotNull UUID player);
+
+    /** Whether the player's range was set individually (kept by /locatorrange). */
+    boolean hasCustomRange(@NotNull UUID player);
+
+    /** The player's waypoint color as 0xRRGGBB (named colors resolved), or {@link #NO_COLOR}. */
+    int getColorRgb(@NotNull UUID player);
+
+    /** The player's color if it is a vanilla named color, null for custom RGB or no color. */
+    @Nullable ChatColor getNamedColor(@NotNull UUID player);
+
+    /** Configured global range (config "range" / /locatorrange). */
+    int getGlobalRange();
+
+    /** Global range currently applied: the configured range, capped while the server is overloaded. */
+    int getEffectiveRange();
+
+    /** Start collecting changes; nothing happens until {@link Batch#commit()}. */
+    @NotNull Batch batch();
+
+    /**
+     * Changes for any number of players, applied together. Per player and field the last call wins.
+     * A batch is meant for one thread and can be committed once.
+     */
+    interface Batch {
+
+        /** Turn the player's locator bar ON or OFF (same as /locatorbar on|off). */
+        @NotNull Batch setEnabled(@NotNull UUID player, boolean enabled);
+
+        /** Give the player their own range (blocks, >= 0); /locatorrange leaves it alone. */
+        @NotNull Batch setRange(@NotNull UUID player, int range);
+
+        /** Make the player follow the global range (and range tiers) again. */
+        @NotNull Batch resetRange(@NotNull UUID player);
+
+        /**
+         * Set the color from a vanilla name, "#RRGGBB", "RRGGBB" or "reset".
+         * @throws IllegalArgumentException if the color is not recognized
+         */
+        @NotNull Batch setColor(@NotNull UUID player, @NotNull String color);
+
+        /** Set the color from 0xRRGGBB, or {@link #NO_COLOR} to reset it. */
+        @NotNull Batch setColorRgb(@NotNull UUID player, int rgb);
+
+        /**
+         * Store and apply everything in this batch. Any thread; the work happens on the server's global thread.
+         * The future completes once the new state is stored (reads return it) and queued for the players.
+         * It completes exceptionally, with nothing applied, if an offline player's stored record could not be read.
+         */
+        @NotNull CompletableFuture<Void> commit();
+    }
+}
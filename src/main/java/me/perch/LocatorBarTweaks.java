@@ -1,56 +1,131 @@
 package me.perch;
 
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.HandlerList;
 import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.event.server.PluginEnableEvent;
 import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.ServicePriority;
 import org.bukkit.plugin.java.JavaPlugin;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.zip.CRC32;
 
 /**
  * LocatorBarTweaks
  * - EDITED: Only applies default range to players joining for the FIRST time.
  * - Per-player toggle (/locatorbar on|off|toggle|status) — only affects their own receive range
- * - Global range (/locatorrange <blocks>) — updates only players whose bar is ON
+ * - Global range (/locatorrange <blocks>) — updates only players whose bar is ON; offline players pick it up
+ *   on their next join (range epochs), unless their range was customized
+ * - Optional adaptive mode: the applied range is capped while the server's MSPT is high
+ * - Optional density mode: per-player caps in crowded areas from an incremental chunk-grid index
+ * - Range tiers: larger ranges by permission (perchlocator.range.<tier>), resolved once per player and cached
  * - Color setting (/locatorcolor <named|#RRGGBB|RRGGBB|reset>) via vanilla /waypoint modify
- * - All messages configurable in config.yml (with & color codes and simple {placeholders})
- * - Data saved in data.yml
+ * - Ranges applied through the typed Attribute API when the server has it, vanilla /attribute otherwise
+ * - All messages configurable in config.yml (with & color codes and simple {placeholders}), precompiled on load
+ * - /locatorreload (or a config.yml watcher) applies edits live; only players whose applied range changed are updated
+ * - Data saved in data.yml or a journal+snapshot (storage.type), coalesced and written off the main thread
+ * - Last-seen tracking and retention: idle/default-only records are compacted away (/locatorcompact)
+ * - Audit trail of state changes: lock-free ring drained to rotating gzip logs, queried with /locatorhistory
+ * - Instrumentation via /locatorstats, %perchlocator_stat_*% and an optional Prometheus textfile
+ * - Folia-aware: plugin state lives on the global region thread, per-player updates run on the player's region
  * - PAPI expansion auto-registers on load/enable and when PlaceholderAPI becomes enabled later
+ * - Typed LocatorBarService (ServicesManager) with batched writes; LocatorBarChangeEvent once per tick
  */
-public class LocatorBarTweaks extends JavaPlugin implements Listener {
+public class LocatorBarTweaks extends JavaPlugin implements Listener, LocatorBarService {
 
     // ---------------- State ----------------
-    private int globalRange;
+    private volatile int globalRange; // read by async placeholder requests
+    // bumped by every /locatorrange; remembered ranges from an older epoch are replaced on join
+    private int rangeEpoch;
 
-    // persistence
-    private File dataFile;
-    private YamlConfiguration data;
+    // persistence (write-behind, see saveData())
+    private DataStore store;
+    private ScheduledTask flushTask;
+    private ScheduledTask compactTask;
 
-    // caches mirrored to data.yml
-    private final Set<UUID> receiveDisabled = new HashSet<>();
-    private final Map<UUID, Integer> lastReceiveWhenEnabled = new HashMap<>();
-    private final Map<UUID, String> preferredColor = new HashMap<>();
+    // lazy stores: players who quit, unloaded on the next flush; lock guards load vs. unload
+    private final Set<UUID> pendingUnload = ConcurrentHashMap.newKeySet();
+    private final Object residency = new Object();
 
-    // message cache
+    // attribute/color application (typed API when available, commands otherwise), drained per tick
+    private AttributeApplier applier;
+    private ApplyScheduler applyQueue;
+    private ScheduledTask applyTask;
+
+    // MSPT-driven range cap (null unless adaptive.enabled)
+    private volatile AdaptiveRange adaptive;
+    private ScheduledTask adaptiveTask;
+
+    // per-player caps in crowded areas (null unless density.enabled)
+    private DensityLimiter density;
+    private ScheduledTask densityTask;
+
+    // permission range tiers (null unless range-tiers.tiers has entries); LuckPerms hook or periodic re-check
+    private volatile RangeTiers tiers;
+    private ScheduledTask tierTask;
+    private AutoCloseable tierHook;
+
+    // current /locatorrange rollout (processed() window of applyQueue)
+    private long rolloutStart = 0;
+    private long rolloutEnd = 0;
+
+    // per-player state (disabled flag, remembered range, color) mirrored to storage; safe to read from any thread
+    private final PlayerStateStore players = new PlayerStateStore();
+    // players whose state or applied range changed this tick (LocatorBarChangeEvent); global thread
+    private final LinkedHashSet<UUID> changedPlayers = new LinkedHashSet<>();
+    // applied range last queued per online player, so cap changes only report players whose value moved
+    private final HashMap<UUID, Integer> queuedRanges = new HashMap<>();
+
+    // config + compiled messages (swapped as a whole on reload)
     private FileConfiguration cfg;
+    private volatile Messages messages;
+    private long configStamp; // checksum of the config.yml last loaded or saved by us
+    private ConfigWatcher configWatcher;
+
+    // audit trail (null unless audit.enabled); auditSource tags records with the operation in progress (global thread)
+    private AuditLog audit;
+    private AuditLog.Source auditSource = AuditLog.Source.OTHER;
+
+    // instrumentation (/locatorstats, %perchlocator_stat_*%, Prometheus textfile)
+    private final Metrics metrics = new Metrics();
+    private ScheduledTask metricsTask;
 
     // PAPI registration guard
     private boolean papiRegistered = false;
 
+    private static final DateTimeFormatter HISTORY_TIME =
+            DateTimeFormatter.ofPattern("MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+    private PAPIExpansion papiExpansion;
+
     // ---------------- Lifecycle ----------------
     @Override
     public void onLoad() {
@@ -62,230 +137,903 @@ public class LocatorBarTweaks extends JavaPlugin implements Listener {
     public void onEnable() {
         saveDefaultConfig();
         reloadLocal();
+        startAudit();
 
-        // Prepare data.yml
-        dataFile = new File(getDataFolder(), "data.yml");
-        if (!dataFile.exists()) {
-            try {
-                getDataFolder().mkdirs();
-                dataFile.createNewFile();
-            } catch (IOException e) {
-                getLogger().severe("Could not create data.yml: " + e.getMessage());
-            }
-        }
-        data = YamlConfiguration.loadConfiguration(dataFile);
-
-        // hydrate caches
-        for (String s : data.getStringList("receiveDisabled")) {
-            try { receiveDisabled.add(UUID.fromString(s)); } catch (IllegalArgumentException ignored) {}
-        }
-        if (data.isConfigurationSection("lastReceiveWhenEnabled")) {
-            for (String k : Objects.requireNonNull(data.getConfigurationSection("lastReceiveWhenEnabled")).getKeys(false)) {
+        // Load persisted state into caches
+        store = createStore();
+        store.load(players, globalRange);
+        if (store.isLazy()) {
+            // Reload with players online: they never went through pre-login for this instance
+            for (Player p : Bukkit.getOnlinePlayers()) {
                 try {
-                    UUID id = UUID.fromString(k);
-                    int r = Math.max(0, data.getInt("lastReceiveWhenEnabled." + k, globalRange));
-                    lastReceiveWhenEnabled.put(id, r);
-                } catch (IllegalArgumentException ignored) {}
-            }
-        }
-        if (data.isConfigurationSection("preferredColor")) {
-            for (String k : Objects.requireNonNull(data.getConfigurationSection("preferredColor")).getKeys(false)) {
-                try {
-                    UUID id = UUID.fromString(k);
-                    String c = data.getString("preferredColor." + k, "unset");
-                    if (c != null) preferredColor.put(id, c);
-                } catch (IllegalArgumentException ignored) {}
+                    loadResident(p.getUniqueId());
+                } catch (IOException e) {
+                    getLogger().severe("Could not load " + p.getName() + "'s locator settings; they keep the current ones.");
+                }
             }
         }
 
+        startFlush();
+        startCompaction();
+
+        applier = AttributeApplier.detect(this, metrics);
+        applyQueue = new ApplyScheduler(this, applier, cfg.getDouble("apply.tick-budget-ms", 2.0), metrics);
+        applyTask = Bukkit.getGlobalRegionScheduler().runAtFixedRate(this, t -> {
+            applyQueue.run();
+            fireChanges();
+        }, 1L, 1L);
+
+        startTiers();
+        startAdaptive();
+        startDensity();
+
+        metrics.gauge("apply_queue_depth", applyQueue::size);
+        metrics.gauge("resident_players", players::size);
+        metrics.gauge("effective_range", this::getEffectiveRange);
+        startMetricsExport();
+
+        Bukkit.getServicesManager().register(LocatorBarService.class, this, this, ServicePriority.Normal);
+
         // events (includes PluginEnableEvent for late PAPI enable)
         Bukkit.getPluginManager().registerEvents(this, this);
 
-        // NOTE: Loop to force settings on online players has been removed
-        // to prevent resetting existing players on reload.
+        // Reload: bring online players back in line with their stored state; enabled players without a
+        // stored range get the global range (same as on join). Values that already match are skipped.
+        for (Player p : Bukkit.getOnlinePlayers()) reconcile(p);
 
         // Try PAPI register now (in case PAPI is already enabled)
         tryRegisterPapi();
+        startWatcher();
 
-        getLogger().info("LocatorBarTweaks enabled. Global range=" + globalRange);
+        getLogger().info("LocatorBarTweaks enabled. Global range=" + globalRange + ", applier=" + applier.describe());
     }
 
     private void reloadLocal() {
         reloadConfig();
         cfg = getConfig();
+        configStamp = configChecksum();
+        messages = Messages.compile(cfg);
         this.globalRange = Math.max(0, cfg.getInt("range", 250));
+        this.rangeEpoch = Math.max(0, cfg.getInt("range-epoch", 0));
+    }
+
+    @Override
+    public void onDisable() {
+        Bukkit.getServicesManager().unregisterAll(this);
+        if (configWatcher != null) configWatcher.close();
+        if (metricsTask != null) metricsTask.cancel();
+        if (adaptiveTask != null) adaptiveTask.cancel();
+        if (densityTask != null) densityTask.cancel();
+        stopTiers();
+        if (applyTask != null) applyTask.cancel();
+        try {
+            if (applyQueue != null) applyQueue.drainAll();
+        } finally {
+            if (flushTask != null) flushTask.cancel();
+            if (compactTask != null) compactTask.cancel();
+            if (store != null) {
+                // Final synchronous flush so nothing is lost on shutdown, even if applying failed
+                store.close(snapshot());
+            }
+            if (audit != null) audit.close();
+        }
     }
 
+    private DataStore createStore() {
+        String type = cfg.getString("storage.type", "yaml").toLowerCase(Locale.ROOT);
+        switch (type) {
+            case "journal":
+                return new JournalDataStore(getDataFolder(), getLogger(), metrics,
+                        cfg.getLong("storage.journal.compact-after-bytes", 1L << 20));
+            case "sharded":
+                return new ShardedDataStore(getDataFolder(), getLogger(), metrics);
+            case "sql":
+                try {
+                    return new SqlDataStore(getDataFolder(), getLogger(), metrics, sqlSettings());
+                } catch (IllegalArgumentException e) {
+                    getLogger().warning(e.getMessage() + ", using yaml.");
+                    return new YamlDataStore(new File(getDataFolder(), "data.yml"), getLogger(), metrics);
+                }
+            case "yaml":
+                return new YamlDataStore(new File(getDataFolder(), "data.yml"), getLogger(), metrics);
+            default:
+                getLogger().warning("Unknown storage.type '" + type + "', using yaml.");
+                return new YamlDataStore(new File(getDataFolder(), "data.yml"), getLogger(), metrics);
+        }
+    }
+
+    private SqlDataStore.Settings sqlSettings() {
+        SqlDataStore.Settings s = new SqlDataStore.Settings();
+        s.url = cfg.getString("storage.sql.url", "jdbc:sqlite:{data-folder}/data.db")
+                .replace("{data-folder}", getDataFolder().getAbsolutePath());
+        s.username = cfg.getString("storage.sql.username", "");
+        s.password = cfg.getString("storage.sql.password", "");
+        s.table = cfg.getString("storage.sql.table", s.table);
+        s.poolSize = cfg.getInt("storage.sql.pool-size", s.poolSize);
+        s.batchSize = Math.max(1, cfg.getInt("storage.sql.batch-size", s.batchSize));
+        s.queueCapacity = cfg.getInt("storage.sql.queue-capacity", s.queueCapacity);
+        return s;
+    }
+
+    /** Coalesced write-behind: mutations are only recorded, this task flushes at most once per interval. */
+    private void startFlush() {
+        long flushTicks = Math.max(1L, cfg.getLong("storage.flush-interval-ticks", 100L));
+        flushTask = Bukkit.getGlobalRegionScheduler().runAtFixedRate(this, t -> saveData(), flushTicks, flushTicks);
+    }
+
+    /** Flush pending changes (if any) to disk off the main thread. */
     private void saveData() {
-        data.set("receiveDisabled", receiveDisabled.stream().map(UUID::toString).collect(Collectors.toList()));
-        for (Map.Entry<UUID, Integer> e : lastReceiveWhenEnabled.entrySet()) {
-            data.set("lastReceiveWhenEnabled." + e.getKey(), e.getValue());
+        long start = System.nanoTime();
+        store.flush(this::snapshot);
+        metrics.timer("save").since(start);
+        if (!pendingUnload.isEmpty()) {
+            // Records were captured by the flush above, so they can leave memory now
+            synchronized (residency) {
+                for (UUID id : pendingUnload) {
+                    if (Bukkit.getPlayer(id) == null) players.unload(id);
+                }
+                pendingUnload.clear();
+            }
+        }
+    }
+
+    /**
+     * Lazy stores: read one player's record from disk and make it resident. Any thread.
+     * A read failure leaves the player non-resident; it must never look like "no record".
+     * A resident record without unsaved changes (quit, not unloaded yet) is replaced: another server
+     * sharing the store may have written a newer one since.
+     */
+    private void loadResident(UUID id) throws IOException {
+        PlayerState resident = players.get(id);
+        PlayerState st = store.loadPlayer(id); // null while the resident record is dirty
+        synchronized (residency) {
+            pendingUnload.remove(id);
+            if (st != null) players.loadIfUnchanged(id, resident, st);
+        }
+    }
+
+    // ---------------- Retention ----------------
+    private void startCompaction() {
+        long compactHours = cfg.getLong("retention.compact-interval-hours", 24L);
+        if (compactHours <= 0) return;
+        long period = compactHours * 60L * 60L * 20L;
+        compactTask = Bukkit.getGlobalRegionScheduler().runAtFixedRate(this, t -> compactData(null), period, period);
+    }
+
+    private void markSeen(UUID id) {
+        int today = RetentionPolicy.today();
+        if (players.setLastSeen(id, today)) store.lastSeenChanged(id, today);
+    }
+
+    /**
+     * Drop records the retention policy no longer needs: resident ones here (memory), then the store
+     * rewrites/cleans storage in the background. Reports to sender (if any) when done.
+     */
+    private void compactData(CommandSender sender) {
+        RetentionPolicy policy = new RetentionPolicy(
+                cfg.getInt("retention.max-idle-days", 0),
+                cfg.getBoolean("retention.drop-defaults", true),
+                globalRange, store.isShared());
+        long start = System.nanoTime();
+        // Last-seen is only stamped on join/quit: a session longer than max-idle-days must not look idle
+        for (Player p : Bukkit.getOnlinePlayers()) markSeen(p.getUniqueId());
+        int inMemory = players.removeIf(policy::drops, store::recordRemoved);
+        // Records from before last-seen tracking start their idle clock now
+        for (Map.Entry<UUID, PlayerState> e : players.copy().entrySet()) {
+            if (e.getValue().lastSeen == 0 && players.setLastSeen(e.getKey(), policy.today)) {
+                store.lastSeenChanged(e.getKey(), policy.today);
+            }
+        }
+        store.compact(policy, snapshot(), r -> GlobalThread.run(this, () -> {
+            int removed = inMemory + r.removed;
+            long reclaimed = r.bytesBefore < 0 || r.bytesAfter < 0 ? -1 : Math.max(0, r.bytesBefore - r.bytesAfter);
+            metrics.timer("compact").since(start);
+            metrics.counter("compact_removed").add(removed);
+            if (reclaimed > 0) metrics.counter("compact_bytes_reclaimed").add(reclaimed);
+            getLogger().info("Compaction removed " + removed + " records, reclaimed " + formatBytes(reclaimed) + ".");
+            if (sender != null) {
+                send(sender, "compact-done",
+                        "records", String.valueOf(removed),
+                        "reclaimed", formatBytes(reclaimed),
+                        "before", formatBytes(r.bytesBefore),
+                        "after", formatBytes(r.bytesAfter));
+            }
+        }));
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 0) return "unknown";
+        if (bytes < 1024) return bytes + " B";
+        if (bytes < 1024 * 1024) return String.format(Locale.ROOT, "%.1f KB", bytes / 1024.0);
+        return String.format(Locale.ROOT, "%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+
+    private DataStore.Snapshot snapshot() {
+        return new DataStore.Snapshot(players.copy());
+    }
+
+    // ---------------- State mutation (caches + store) ----------------
+    private void setReceiveDisabled(UUID id, boolean disabled) {
+        if (players.setDisabled(id, disabled)) {
+            store.disabledChanged(id, disabled);
+            changedPlayers.add(id);
+            audit(id, AuditLog.Field.BAR, disabled ? 1 : 0, disabled ? 0 : 1);
+        }
+    }
+
+    private void setRememberedRange(UUID id, int range, int epoch) {
+        PlayerState before = players.get(id);
+        if (players.setRange(id, range, epoch)) {
+            store.rangeChanged(id, range, epoch);
+            changedPlayers.add(id);
+            audit(id, AuditLog.Field.RANGE, before.hasRange() ? before.range : -1, range);
+            if (density != null) density.invalidate(id);
+        }
+    }
+
+    /** Stored range, or the global range if none; non-custom ranges in a shared store always follow the local one. */
+    private int rememberedRange(PlayerState st) {
+        return store.isShared() && !st.isCustomRange() ? globalRange : st.rangeOr(globalRange);
+    }
+
+    /** Keep what an ON player currently gets as their remembered range (before turning the bar off). */
+    private void rememberCurrentRange(UUID id) {
+        if (!players.get(id).hasRange()) setRememberedRange(id, globalRange, rangeEpoch);
+    }
+
+    /**
+     * Lazy propagation of /locatorrange: an enabled player whose remembered range predates the current
+     * epoch gets the current global range. Customized ranges are left alone; players without a stored
+     * range need nothing here, they always follow the global range (see reconcile).
+     */
+    private void syncRangeEpoch(UUID id) {
+        if (store.isShared()) return; // epochs are per server; non-custom ranges follow the local global range
+        PlayerState st = players.get(id);
+        if (st.isDisabled() || !st.hasRange() || st.isCustomRange() || st.epoch == rangeEpoch) return;
+        setRememberedRange(id, globalRange, rangeEpoch);
+    }
+
+    private void setPreferredColor(UUID id, WaypointColor color) {
+        PlayerState before = players.get(id);
+        if (players.setColor(id, color)) {
+            store.colorChanged(id, color);
+            changedPlayers.add(id);
+            audit(id, AuditLog.Field.COLOR, before.hasColor() ? before.color : WaypointColor.NONE, color.packed());
+        }
+    }
+
+    // ---------------- Audit trail ----------------
+    private void startAudit() {
+        if (!cfg.getBoolean("audit.enabled", true)) return;
+        audit = new AuditLog(new File(getDataFolder(), "audit"),
+                cfg.getInt("audit.buffer-size", 8192),
+                cfg.getInt("audit.history-size", 10000),
+                cfg.getLong("audit.max-file-bytes", 5L << 20),
+                cfg.getInt("audit.max-files", 10),
+                cfg.getLong("audit.flush-interval-ms", 1000L),
+                getLogger(), metrics);
+    }
+
+    /** Record a change (old != new) under the current auditSource; never blocks, drops when the buffer is full. */
+    private void audit(UUID id, AuditLog.Field field, int oldValue, int newValue) {
+        if (audit != null && oldValue != newValue) audit.record(id, field, auditSource, oldValue, newValue);
+    }
+
+    /** /locatorhistory <player|uuid> [limit] */
+    private void showHistory(CommandSender sender, String label, String[] args) {
+        if (args.length < 1 || args.length > 2) {
+            send(sender, "history-usage", "label", label);
+            return;
         }
-        for (Map.Entry<UUID, String> e : preferredColor.entrySet()) {
-            data.set("preferredColor." + e.getKey(), e.getValue());
+        if (audit == null) {
+            send(sender, "history-disabled");
+            return;
         }
+        UUID id;
         try {
-            data.save(dataFile);
-        } catch (IOException e) {
-            getLogger().severe("Failed to save data.yml: " + e.getMessage());
+            id = UUID.fromString(args[0]);
+        } catch (IllegalArgumentException notUuid) {
+            OfflinePlayer known = Bukkit.getOfflinePlayerIfCached(args[0]);
+            if (known == null) {
+                send(sender, "player-unknown", "input", args[0]);
+                return;
+            }
+            id = known.getUniqueId();
+        }
+        int limit = 10;
+        if (args.length == 2) {
+            try {
+                limit = Math.max(1, Math.min(100, Integer.parseInt(args[1])));
+            } catch (NumberFormatException ex) {
+                send(sender, "invalid-number", "input", args[1]);
+                return;
+            }
+        }
+        List<AuditLog.Entry> entries = audit.history(id, limit);
+        if (entries.isEmpty()) {
+            send(sender, "history-empty", "player", args[0]);
+            return;
+        }
+        send(sender, "history-header", "player", args[0], "count", String.valueOf(entries.size()));
+        for (AuditLog.Entry e : entries) {
+            send(sender, "history-entry",
+                    "time", HISTORY_TIME.format(Instant.ofEpochMilli(e.time)),
+                    "source", e.source.name().toLowerCase(Locale.ROOT),
+                    "field", e.field.name().toLowerCase(Locale.ROOT),
+                    "old", e.oldText(),
+                    "new", e.newText());
         }
     }
 
-    // ---------------- PAPI auto-registration ----------------
-    private void tryRegisterPapi() {
-        if (papiRegistered) return;
-        Plugin papi = Bukkit.getPluginManager().getPlugin("PlaceholderAPI");
-        if (papi != null && papi.isEnabled()) {
+    // ---------------- Adaptive range ----------------
+    private void startAdaptive() {
+        if (!cfg.getBoolean("adaptive.enabled", false)) return;
+        try {
+            Bukkit.getAverageTickTime();
+        } catch (NoSuchMethodError | UnsupportedOperationException e) {
+            // Folia has no server-wide tick time
+            getLogger().warning("adaptive.enabled needs Paper's server tick time API; adaptive range disabled.");
+            return;
+        }
+        adaptive = new AdaptiveRange(
+                cfg.getInt("adaptive.window-samples", 10),
+                cfg.getDouble("adaptive.high-mspt", 45.0),
+                cfg.getDouble("adaptive.low-mspt", 35.0),
+                cfg.getInt("adaptive.floor", 64),
+                cfg.getInt("adaptive.step", 32));
+        long period = Math.max(1L, cfg.getLong("adaptive.sample-interval-ticks", 20L));
+        adaptiveTask = Bukkit.getGlobalRegionScheduler().runAtFixedRate(this, t -> sampleLoad(), period, period);
+    }
+
+    private void stopAdaptive() {
+        if (adaptiveTask != null) adaptiveTask.cancel();
+        adaptiveTask = null;
+        adaptive = null;
+    }
+
+    private void sampleLoad() {
+        AdaptiveRange a = adaptive;
+        if (!a.sample(Bukkit.getAverageTickTime(), globalRange)) return;
+        int range = getEffectiveRange();
+        getLogger().info(String.format(Locale.ROOT, "Average MSPT %.1f: effective range now %d (configured %d).",
+                a.average(), range, globalRange));
+        // Spread over the next ticks by the apply queue; transmit is capped for everyone, OFF players keep receive 0
+        if (density != null) density.invalidateAll();
+        for (Player p : Bukkit.getOnlinePlayers()) applyCappedRanges(p);
+    }
+
+    // ---------------- Density limit ----------------
+    private void startDensity() {
+        if (!cfg.getBoolean("density.enabled", false)) return;
+        density = new DensityLimiter(this,
+                new DensityGrid(cfg.getInt("density.cell-size", 32)),
+                cfg.getInt("density.max-waypoints", 40),
+                cfg.getInt("density.min-range", 32),
+                cfg.getDouble("density.tick-budget-ms", 0.5),
+                this::uncappedRange,
+                id -> {
+                    Player p = Bukkit.getPlayer(id);
+                    if (p != null) applyCappedRanges(p);
+                });
+        for (Player p : Bukkit.getOnlinePlayers()) density.track(p);
+        Bukkit.getPluginManager().registerEvents(density, this);
+        densityTask = Bukkit.getGlobalRegionScheduler().runAtFixedRate(this, t -> density.run(), 1L, 1L);
+        metrics.gauge("density_capped_players", () -> {
+            DensityLimiter d = density; // null after a reload turned density off
+            return d == null ? 0 : d.cappedPlayers();
+        });
+    }
+
+    private void stopDensity() {
+        if (density == null) return;
+        densityTask.cancel();
+        HandlerList.unregisterAll(density);
+        density = null;
+        densityTask = null;
+    }
+
+    // ---------------- Range tiers ----------------
+    private void startTiers() {
+        RangeTiers t = RangeTiers.fromConfig(cfg.getConfigurationSection("range-tiers.tiers"));
+        if (t.isEmpty()) return;
+        for (Player p : Bukkit.getOnlinePlayers()) t.resolve(p);
+        tiers = t;
+        if (Bukkit.getPluginManager().getPlugin("LuckPerms") != null) {
             try {
-                new PAPIExpansion(this).register();
-                papiRegistered = true;
-                getLogger().info("PlaceholderAPI detected — expansion registered.");
-            } catch (Throwable t) {
-                getLogger().warning("Failed to register PAPI expansion: " + t.getMessage());
+                tierHook = LuckPermsHook.subscribe(this, id -> GlobalThread.run(this, () -> recheckTier(id)));
+                getLogger().info(t.size() + " range tiers; permission changes tracked through LuckPerms.");
+                return;
+            } catch (Throwable e) {
+                getLogger().warning("LuckPerms hook failed (" + e + "); re-checking range tiers periodically.");
             }
         }
+        long seconds = cfg.getLong("range-tiers.recheck-interval-seconds", 30L);
+        if (seconds > 0) {
+            tierTask = Bukkit.getGlobalRegionScheduler().runAtFixedRate(this, task -> {
+                for (Player p : Bukkit.getOnlinePlayers()) recheckTier(p.getUniqueId());
+            }, seconds * 20L, seconds * 20L);
+        }
     }
 
-    @EventHandler
-    public void onPluginEnable(PluginEnableEvent event) {
-        if (!papiRegistered && "PlaceholderAPI".equalsIgnoreCase(event.getPlugin().getName())) {
-            tryRegisterPapi();
+    private void stopTiers() {
+        if (tierTask != null) tierTask.cancel();
+        tierTask = null;
+        if (tierHook != null) {
+            try {
+                tierHook.close();
+            } catch (Exception ignored) {
+                // LuckPerms is shutting down as well
+            }
         }
+        tierHook = null;
+        tiers = null;
     }
 
-    // ---------------- Messages ----------------
-    private String colorize(String s) {
-        if (s == null) return "";
-        return ChatColor.translateAlternateColorCodes('&', s);
+    /** Permissions may have changed: re-resolve and re-apply if the player's tier moved. */
+    private void recheckTier(UUID id) {
+        RangeTiers t = tiers;
+        Player p = Bukkit.getPlayer(id);
+        if (t != null && p != null && t.resolve(p)) {
+            if (density != null) density.invalidate(id);
+            applyCappedRanges(p);
+        }
+    }
+
+    private int tierRange(UUID id) {
+        RangeTiers t = tiers;
+        return t == null ? RangeTiers.NONE : t.range(id);
+    }
+
+    /**
+     * Range an enabled player gets before caps: their remembered range (at most the global range),
+     * or their tier's range when that is larger. Customized ranges are kept as they are, above the
+     * global range too; only the adaptive/density caps apply to them. Any thread.
+     */
+    private int baseRange(UUID id) {
+        PlayerState st = players.get(id);
+        if (st.isCustomRange()) return st.range;
+        int range = Math.min(rememberedRange(st), globalRange);
+        int tier = tierRange(id);
+        return Math.max(range, tier);
+    }
+
+    /** Base range capped by the adaptive range (density caps excluded). Any thread. */
+    private int uncappedRange(UUID id) {
+        AdaptiveRange a = adaptive;
+        int range = baseRange(id);
+        return a == null ? range : Math.min(range, a.cap());
     }
 
-    private boolean isBlankText(String s) {
-        return s == null || ChatColor.stripColor(s).trim().isEmpty();
+    /**
+     * Range actually applied for an enabled player: their base range (remembered/global or tier),
+     * capped by the adaptive range and their density cap.
+     */
+    private int appliedRange(UUID id) {
+        int range = uncappedRange(id);
+        return density == null ? range : Math.min(range, density.cap(id));
+    }
+
+    /**
+     * Re-queue ranges for a player whose caps changed. Transmit is capped for everyone (others track a
+     * player whatever their own bar says); receive only while the bar is ON, OFF players keep receive 0.
+     */
+    private void applyCappedRanges(Player p) {
+        UUID id = p.getUniqueId();
+        int range = appliedRange(id);
+        Integer previous = queuedRanges.put(id, range);
+        if (!players.get(id).isDisabled()) {
+            if (previous == null || previous != range) changedPlayers.add(id);
+            setReceiveRange(p, range);
+        }
+        setTransmitRange(p, range);
     }
 
-    private String replacePlaceholders(String raw, Map<String, String> params) {
-        if (raw == null) return "";
-        if (params != null) {
-            for (Map.Entry<String, String> e : params.entrySet()) {
-                raw = raw.replace("{" + e.getKey() + "}", String.valueOf(e.getValue()));
+    /** Periodically write metrics for node_exporter's textfile collector (metrics.prometheus-file). */
+    private void startMetricsExport() {
+        String path = cfg.getString("metrics.prometheus-file", "");
+        if (path == null || path.isBlank()) return;
+        File f = new File(path);
+        Path file = (f.isAbsolute() ? f : new File(getDataFolder(), path)).toPath();
+        long period = Math.max(1L, cfg.getLong("metrics.export-interval-seconds", 15L));
+        metricsTask = Bukkit.getAsyncScheduler().runAtFixedRate(this, t -> {
+            try {
+                metrics.writePrometheus(file);
+            } catch (IOException e) {
+                getLogger().warning("Failed to write metrics to " + file + ": " + e.getMessage());
             }
+        }, period, period, TimeUnit.SECONDS);
+    }
+
+    // ---------------- Reload ----------------
+    private void startWatcher() {
+        if (!cfg.getBoolean("reload.watch-file", false)) return;
+        try {
+            configWatcher = ConfigWatcher.start(configFile().toPath(), cfg.getLong("reload.debounce-millis", 500L),
+                    () -> GlobalThread.run(this, () -> reloadSettings(null)));
+        } catch (IOException | UnsupportedOperationException e) {
+            getLogger().warning("Cannot watch config.yml (" + e.getMessage() + "); use /locatorreload.");
         }
-        return raw;
     }
 
-    private String msg(String path, Map<String, String> params) {
-        String raw = getMessageRaw(path);
-        raw = replacePlaceholders(raw, params);
-        return colorize(raw);
+    /**
+     * Re-read config.yml (/locatorreload, or the watcher when sender is null). Global thread.
+     * - A file that does not parse is rejected as a whole; the running settings stay in place
+     * - Messages are compiled first and swapped in with one write, so async placeholder/message readers
+     *   see either the old or the new set, never a mix
+     * - Only features whose section changed are restarted; a changed range is rolled out like /locatorrange
+     * - Applied ranges are compared per online player before/after, and only players whose value
+     *   changed are queued (spread over ticks by the apply queue)
+     * - storage.* (except the flush interval) and audit.* need a restart; the sender is told which
+     */
+    private void reloadSettings(CommandSender sender) {
+        long stamp = configChecksum();
+        if (sender == null && stamp == configStamp) return; // our own saveConfig(), or saved without changes
+        try {
+            new YamlConfiguration().load(configFile());
+        } catch (IOException | InvalidConfigurationException e) {
+            getLogger().warning("config.yml not reloaded: " + e.getMessage());
+            if (sender != null) send(sender, "reload-failed", "error", String.valueOf(e.getMessage()));
+            return;
+        }
+        long start = System.nanoTime();
+        AuditLog.Source outer = auditSource;
+        auditSource = AuditLog.Source.RELOAD;
+
+        // What every online player gets right now (transmit for all, receive too while the bar is ON)
+        Map<UUID, Integer> before = new HashMap<>();
+        for (Player p : Bukkit.getOnlinePlayers()) {
+            before.put(p.getUniqueId(), appliedRange(p.getUniqueId()));
+        }
+
+        FileConfiguration old = cfg;
+        reloadConfig();
+        cfg = getConfig();
+        configStamp = stamp;
+        messages = Messages.compile(cfg);
+
+        rangeEpoch = Math.max(rangeEpoch, cfg.getInt("range-epoch", 0));
+        int newRange = Math.max(0, cfg.getInt("range", 250));
+        if (newRange != globalRange) adoptGlobalRange(newRange);
+
+        applyQueue.setBudgetMillis(cfg.getDouble("apply.tick-budget-ms", 2.0));
+        if (changed(old, cfg, "range-tiers")) {
+            stopTiers();
+            startTiers();
+        }
+        if (changed(old, cfg, "adaptive")) {
+            stopAdaptive();
+            startAdaptive();
+        }
+        if (changed(old, cfg, "density")) {
+            stopDensity();
+            startDensity();
+        }
+        if (changed(old, cfg, "metrics")) {
+            if (metricsTask != null) metricsTask.cancel();
+            metricsTask = null;
+            startMetricsExport();
+        }
+        if (changed(old, cfg, "storage.flush-interval-ticks")) {
+            flushTask.cancel();
+            startFlush();
+        }
+        if (changed(old, cfg, "retention.compact-interval-hours")) {
+            if (compactTask != null) compactTask.cancel();
+            compactTask = null;
+            startCompaction();
+        }
+        if (changed(old, cfg, "reload")) {
+            if (configWatcher != null) configWatcher.close();
+            configWatcher = null;
+            startWatcher();
+        }
+        Map<String, Object> oldStorage = leaves(old, "storage");
+        Map<String, Object> newStorage = leaves(cfg, "storage");
+        oldStorage.remove("flush-interval-ticks");
+        newStorage.remove("flush-interval-ticks");
+        List<String> restartOnly = new ArrayList<>();
+        if (!oldStorage.equals(newStorage)) restartOnly.add("storage");
+        if (changed(old, cfg, "audit")) restartOnly.add("audit");
+        boolean restart = !restartOnly.isEmpty();
+        String sections = String.join(", ", restartOnly);
+        if (density != null) density.invalidateAll(); // tiers or the adaptive cap may have moved
+
+        int updated = 0;
+        for (Map.Entry<UUID, Integer> e : before.entrySet()) {
+            Player p = Bukkit.getPlayer(e.getKey());
+            if (p == null || appliedRange(e.getKey()) == e.getValue()) continue;
+            applyCappedRanges(p);
+            updated++;
+        }
+        auditSource = outer;
+        metrics.timer("reload").since(start);
+        getLogger().info("config.yml reloaded: " + updated + " players updated."
+                + (restart ? " Changes to " + sections + " take effect after a restart." : ""));
+        if (sender != null) {
+            send(sender, "reload-done", "players", String.valueOf(updated));
+            if (restart) send(sender, "reload-restart", "sections", sections);
+        }
+    }
+
+    /**
+     * New global range (/locatorrange or an edited config.yml): starts a new epoch, is saved, and becomes the
+     * remembered range of enabled online players without a customized range. Offline players follow on join.
+     */
+    private void adoptGlobalRange(int newRange) {
+        this.globalRange = newRange;
+        this.rangeEpoch++;
+        cfg.set("range", newRange);
+        cfg.set("range-epoch", rangeEpoch);
+        saveConfig();
+        configStamp = configChecksum();
+        AuditLog.Source outer = auditSource;
+        auditSource = AuditLog.Source.ROLLOUT;
+        // Shared stores: rows belong to the network; non-custom ranges follow the new range when read
+        if (!store.isShared()) {
+            for (Player p : Bukkit.getOnlinePlayers()) {
+                UUID id = p.getUniqueId();
+                PlayerState st = players.get(id);
+                if (!st.isDisabled() && !st.isCustomRange()) setRememberedRange(id, newRange, rangeEpoch);
+            }
+        }
+        auditSource = outer;
+        if (density != null) density.invalidateAll();
+    }
+
+    private File configFile() {
+        return new File(getDataFolder(), "config.yml");
+    }
+
+    private long configChecksum() {
+        try {
+            CRC32 crc = new CRC32();
+            crc.update(Files.readAllBytes(configFile().toPath()));
+            return crc.getValue();
+        } catch (IOException e) {
+            return -1;
+        }
     }
 
-    private String msg(String path) {
-        return msg(path, null);
+    private static boolean changed(FileConfiguration a, FileConfiguration b, String path) {
+        return !leaves(a, path).equals(leaves(b, path));
     }
 
-    private String getMessageRaw(String path) {
-        String val = cfg.getString("messages." + path);
-        if (val != null) return val;
+    /** Leaf values under path (or path itself when it is not a section), keyed by relative path. */
+    private static Map<String, Object> leaves(FileConfiguration c, String path) {
+        Map<String, Object> out = new TreeMap<>();
+        ConfigurationSection section = c.getConfigurationSection(path);
+        if (section == null) {
+            out.put(path, c.get(path));
+            return out;
+        }
+        for (String key : section.getKeys(true)) {
+            if (!section.isConfigurationSection(key)) out.put(key, section.get(key));
+        }
+        return out;
+    }
 
-        // Fallback defaults (mirror keys in default config)
-        switch (path) {
-            case "prefix": return "&7[&bLocator&7] ";
-            case "no-permission": return "&cNo permission.";
-            case "players-only": return "&cPlayers only.";
-            case "invalid-number": return "&cNot a number: {input}";
-            case "range-usage": return "&eUsage: /{label} <blocks>";
-            case "range-set": return "&aLocator Bar range set to &b{range}&a for players who have their bar &aON&a.";
-            case "bar-usage": return "&eUsage: /{label} <on|off|toggle|status>";
-            case "bar-status-on": return "&aYour locator bar is &aON&a at &b{range}&a.";
-            case "bar-status-off": return "&eYour locator bar is &cOFF&e (others still see you).";
-            case "bar-on": return "&aYour locator bar is now &aON&a.";
-            case "bar-off": return "&aYour locator bar is now &cOFF&a (others still see you).";
-            case "color-usage": return "&eUsage: /{label} <named|#RRGGBB|RRGGBB|reset>";
-            case "color-updated": return "&aLocator color updated to &b{input}&a.";
-            default: return "";
+    // ---------------- PAPI auto-registration ----------------
+    private void tryRegisterPapi() {
+        if (papiRegistered) return;
+        Plugin papi = Bukkit.getPluginManager().getPlugin("PlaceholderAPI");
+        if (papi != null && papi.isEnabled()) {
+            try {
+                PAPIExpansion expansion = new PAPIExpansion(this, metrics);
+                expansion.register();
+                papiExpansion = expansion;
+                papiRegistered = true;
+                getLogger().info("PlaceholderAPI detected — expansion registered.");
+            } catch (Throwable t) {
+                getLogger().warning("Failed to register PAPI expansion: " + t.getMessage());
+            }
         }
     }
 
-    /** Send helper: if message resolves to blank, send nothing at all (no prefix). */
-    private void send(CommandSender to, String key) {
-        String core = msg(key);
-        if (isBlankText(core)) return; // suppress entirely
-        String pref = msg("prefix");
-        String out = isBlankText(pref) ? core : (pref + core);
-        to.sendMessage(out);
+    @EventHandler
+    public void onPluginEnable(PluginEnableEvent event) {
+        if (!papiRegistered && "PlaceholderAPI".equalsIgnoreCase(event.getPlugin().getName())) {
+            tryRegisterPapi();
+        }
     }
 
-    /** Send helper with params: if message resolves to blank, send nothing at all (no prefix). */
-    private void send(CommandSender to, String key, Map<String, String> params) {
-        String core = msg(key, params);
-        if (isBlankText(core)) return; // suppress entirely
-        String pref = msg("prefix");
-        String out = isBlankText(pref) ? core : (pref + core);
-        to.sendMessage(out);
+    // ---------------- Messages ----------------
+    /** Send helper: if message resolves to blank, send nothing at all (no prefix). params = key, value, ... */
+    private void send(CommandSender to, String key, String... params) {
+        messages.send(to, key, params);
     }
 
     // ---------------- Helpers (Attributes & Color) ----------------
+    // All updates are queued (last write wins per player) and applied within the per-tick budget.
     private void setReceiveRange(OfflinePlayer p, int range) {
-        if (p.getName() == null) return;
-        Bukkit.dispatchCommand(Bukkit.getConsoleSender(),
-                "attribute " + p.getName() + " minecraft:waypoint_receive_range base set " + range);
+        applyQueue.receiveRange(p.getUniqueId(), range);
     }
 
     private void setTransmitRange(OfflinePlayer p, int range) {
-        if (p.getName() == null) return;
-        Bukkit.dispatchCommand(Bukkit.getConsoleSender(),
-                "attribute " + p.getName() + " minecraft:waypoint_transmit_range base set " + range);
+        applyQueue.transmitRange(p.getUniqueId(), range);
     }
 
     private void applyEnabledReceive(Player p) {
-        int remembered = lastReceiveWhenEnabled.getOrDefault(p.getUniqueId(), globalRange);
-        setReceiveRange(p, remembered);
+        setReceiveRange(p, appliedRange(p.getUniqueId()));
     }
 
-    // Accepts: named color (e.g. "red"), hex "#RRGGBB" or "RRGGBB", or "reset"
-    private void setWaypointColor(OfflinePlayer p, String input) {
-        if (p.getName() == null || input == null) return;
-        String arg = input.trim();
-
-        if (arg.equalsIgnoreCase("reset")) {
-            Bukkit.dispatchCommand(Bukkit.getConsoleSender(),
-                    "waypoint modify " + p.getName() + " color reset");
-            return;
-        }
+    private void setWaypointColor(OfflinePlayer p, WaypointColor color) {
+        applyQueue.color(p.getUniqueId(), color);
+    }
 
-        if (arg.startsWith("#")) arg = arg.substring(1);
-        if (Pattern.compile("(?i)^[0-9A-F]{6}$").matcher(arg).matches()) {
-            Bukkit.dispatchCommand(Bukkit.getConsoleSender(),
-                    "waypoint modify " + p.getName() + " color hex " + arg.toUpperCase(Locale.ROOT));
-            return;
+    /**
+     * Queue the player's stored state (bar on/off + range, color); no-ops are dropped by the apply queue.
+     * An enabled player without a stored range follows the global range, so dropping a default record
+     * (retention) changes nothing.
+     */
+    private void reconcile(Player p) {
+        PlayerState st = players.get(p.getUniqueId());
+        if (st.isDisabled()) {
+            setReceiveRange(p, 0);
+        } else {
+            queuedRanges.put(p.getUniqueId(), appliedRange(p.getUniqueId()));
+            setReceiveRange(p, appliedRange(p.getUniqueId()));
+            setTransmitRange(p, appliedRange(p.getUniqueId()));
         }
-
-        Bukkit.dispatchCommand(Bukkit.getConsoleSender(),
-                "waypoint modify " + p.getName() + " color " + arg.toLowerCase(Locale.ROOT));
+        if (st.hasColor()) setWaypointColor(p, st.waypointColor());
     }
 
     // ---------------- Events ----------------
     /**
      * On join: Only if the player has NEVER played before do we enforce
-     * the default receive/transmit ranges. Returning players are left alone.
+     * the default receive/transmit ranges. Returning players get their stored
+     * state (or the global range if none is stored) re-applied where it differs.
      */
     @EventHandler
     public void onJoin(PlayerJoinEvent e) {
         Player p = e.getPlayer();
+        boolean firstJoin = !p.hasPlayedBefore();
+        // Folia fires this on the player's region thread; plugin state is updated on the global thread
+        GlobalThread.run(this, () -> {
+            RangeTiers t = tiers;
+            if (t != null) t.resolve(p);
+            AuditLog.Source outer = auditSource;
+            auditSource = AuditLog.Source.JOIN;
+            if (firstJoin) {
+                UUID id = p.getUniqueId();
+                setRememberedRange(id, globalRange, rangeEpoch);
+                queuedRanges.put(id, appliedRange(id));
+                setReceiveRange(p, appliedRange(id));
+                setTransmitRange(p, appliedRange(id));
+            } else {
+                syncRangeEpoch(p.getUniqueId());
+                reconcile(p);
+            }
+            auditSource = outer;
+            markSeen(p.getUniqueId());
+        });
+    }
 
-        if (!p.hasPlayedBefore()) {
-            UUID id = p.getUniqueId();
-            // This is a first-time join
-            lastReceiveWhenEnabled.put(id, globalRange);
-            setReceiveRange(p, globalRange);
-            setTransmitRange(p, globalRange);
-            saveData();
+    @EventHandler
+    public void onWorldChange(PlayerChangedWorldEvent e) {
+        Player p = e.getPlayer();
+        // Vanilla may reset waypoint data on dimension change: re-check against live values
+        GlobalThread.run(this, () -> {
+            applyQueue.forget(p.getUniqueId());
+            reconcile(p);
+        });
+    }
+
+    /**
+     * Lazy stores: load the record off the main thread before the player joins. HIGHEST, not MONITOR:
+     * a failed read denies the login.
+     */
+    @EventHandler(priority = EventPriority.HIGHEST)
+    public void onPreLogin(AsyncPlayerPreLoginEvent e) {
+        if (!store.isLazy() || e.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) return;
+        try {
+            loadResident(e.getUniqueId());
+        } catch (IOException ex) {
+            // Joining on defaults would overwrite the stored record with the next change
+            metrics.counter("storage_login_denied").increment();
+            e.disallow(AsyncPlayerPreLoginEvent.Result.KICK_OTHER, messages.get("storage-unavailable").render());
         }
     }
 
+    /** Lazy stores: a login denied after we loaded (another HIGHEST handler) unloads on the next flush. Read-only. */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPreLoginResult(AsyncPlayerPreLoginEvent e) {
+        if (!store.isLazy() || e.getLoginResult() == AsyncPlayerPreLoginEvent.Result.ALLOWED) return;
+        if (Bukkit.getPlayer(e.getUniqueId()) == null) pendingUnload.add(e.getUniqueId());
+    }
+
+    @EventHandler
+    public void onQuit(PlayerQuitEvent e) {
+        UUID id = e.getPlayer().getUniqueId();
+        if (papiExpansion != null) papiExpansion.invalidate(id);
+        GlobalThread.run(this, () -> {
+            applyQueue.forget(id);
+            queuedRanges.remove(id);
+            RangeTiers t = tiers;
+            if (t != null) t.forget(id);
+            markSeen(id);
+            if (store.isLazy()) {
+                store.playerQuit(id);
+                pendingUnload.add(id);
+            }
+        });
+    }
+
     // ---------------- Commands ----------------
     @Override
     public boolean onCommand(CommandSender sender, Command cmd, String label, String[] args) {
+        if (!Bukkit.isGlobalTickThread()) {
+            // Folia: player commands run on the player's region; every handler touches global state
+            Bukkit.getGlobalRegionScheduler().execute(this, () -> onCommand(sender, cmd, label, args));
+            return true;
+        }
+        long start = System.nanoTime();
+        AuditLog.Source outer = auditSource;
+        auditSource = AuditLog.Source.COMMAND;
+        try {
+            return handleCommand(sender, cmd, label, args);
+        } finally {
+            auditSource = outer;
+            metrics.timer("command_" + cmd.getName().toLowerCase(Locale.ROOT)).since(start);
+        }
+    }
+
+    private boolean handleCommand(CommandSender sender, Command cmd, String label, String[] args) {
+
+        // /locatorstats  (admin)
+        if (cmd.getName().equalsIgnoreCase("locatorstats")) {
+            if (!sender.hasPermission("perchlocator.admin")) {
+                send(sender, "no-permission");
+                return true;
+            }
+            send(sender, "stats-header");
+            for (Map.Entry<String, Metrics.Timer> e : metrics.timers().entrySet()) {
+                Metrics.Timer t = e.getValue();
+                send(sender, "stats-timer",
+                        "name", e.getKey(),
+                        "count", String.valueOf(t.count()),
+                        "p50", Metrics.millis(t.percentileNanos(0.50)),
+                        "p99", Metrics.millis(t.percentileNanos(0.99)),
+                        "max", Metrics.millis(t.maxNanos()));
+            }
+            for (Map.Entry<String, LongAdder> e : metrics.counters().entrySet()) {
+                send(sender, "stats-value", "name", e.getKey(), "value", String.valueOf(e.getValue().sum()));
+            }
+            for (Map.Entry<String, LongSupplier> e : metrics.gauges().entrySet()) {
+                send(sender, "stats-value", "name", e.getKey(), "value", String.valueOf(e.getValue().getAsLong()));
+            }
+            return true;
+        }
+
+        // /locatorreload  (admin)
+        if (cmd.getName().equalsIgnoreCase("locatorreload")) {
+            if (!sender.hasPermission("perchlocator.admin")) {
+                send(sender, "no-permission");
+                return true;
+            }
+            reloadSettings(sender);
+            return true;
+        }
+
+        // /locatorhistory <player> [limit]  (admin)
+        if (cmd.getName().equalsIgnoreCase("locatorhistory")) {
+            if (!sender.hasPermission("perchlocator.admin")) {
+                send(sender, "no-permission");
+                return true;
+            }
+            showHistory(sender, label, args);
+            return true;
+        }
+
+        // /locatorcompact  (admin)
+        if (cmd.getName().equalsIgnoreCase("locatorcompact")) {
+            if (!sender.hasPermission("perchlocator.admin")) {
+                send(sender, "no-permission");
+                return true;
+            }
+            send(sender, "compact-started");
+            compactData(sender);
+            return true;
+        }
 
         // /locatorrange <blocks>  (admin)
         if (cmd.getName().equalsIgnoreCase("locatorrange")) {
@@ -294,31 +1042,42 @@ public class LocatorBarTweaks extends JavaPlugin implements Listener {
                 return true;
             }
             if (args.length != 1) {
-                send(sender, "range-usage", map("label", label));
+                send(sender, "range-usage", "label", label);
+                return true;
+            }
+            if (args[0].equalsIgnoreCase("progress")) {
+                long total = rolloutEnd - rolloutStart;
+                long done = Math.min(total, applyQueue.processed() - rolloutStart);
+                if (done >= total) {
+                    send(sender, "range-progress-idle");
+                } else {
+                    send(sender, "range-progress",
+                            "done", String.valueOf(done),
+                            "total", String.valueOf(total),
+                            "queued", String.valueOf(applyQueue.size()));
+                }
                 return true;
             }
             try {
                 int newRange = Integer.parseInt(args[0]);
                 if (newRange < 0) {
-                    send(sender, "invalid-number", map("input", args[0]));
+                    send(sender, "invalid-number", "input", args[0]);
                     return true;
                 }
-                this.globalRange = newRange;
-                cfg.set("range", newRange);
-                saveConfig();
-
+                adoptGlobalRange(newRange);
                 for (Player p : Bukkit.getOnlinePlayers()) {
-                    UUID id = p.getUniqueId();
-                    if (!receiveDisabled.contains(id)) {
-                        lastReceiveWhenEnabled.put(id, newRange);
+                    if (!players.get(p.getUniqueId()).isDisabled()) {
+                        queuedRanges.put(p.getUniqueId(), appliedRange(p.getUniqueId()));
                         applyEnabledReceive(p);
-                        setTransmitRange(p, newRange);
+                        setTransmitRange(p, appliedRange(p.getUniqueId()));
                     }
                 }
-                saveData();
-                send(sender, "range-set", map("range", String.valueOf(newRange)));
+                // Applied over the next ticks; confirm once the last queued player is done
+                rolloutStart = applyQueue.processed();
+                rolloutEnd = applyQueue.mark();
+                applyQueue.whenProcessed(rolloutEnd, () -> send(sender, "range-set", "range", String.valueOf(newRange)));
             } catch (NumberFormatException ex) {
-                send(sender, "invalid-number", map("input", args[0]));
+                send(sender, "invalid-number", "input", args[0]);
             }
             return true;
         }
@@ -333,61 +1092,54 @@ public class LocatorBarTweaks extends JavaPlugin implements Listener {
             UUID id = p.getUniqueId();
 
             if (args.length == 0) {
-                send(sender, "bar-usage", map("label", label));
+                send(sender, "bar-usage", "label", label);
                 return true;
             }
 
             String sub = args[0].toLowerCase(Locale.ROOT);
             switch (sub) {
                 case "status": {
-                    boolean off = receiveDisabled.contains(id);
+                    boolean off = players.get(id).isDisabled();
                     if (off) {
                         send(sender, "bar-status-off");
                     } else {
-                        int current = lastReceiveWhenEnabled.getOrDefault(id, globalRange);
-                        send(sender, "bar-status-on", map("range", String.valueOf(current)));
+                        int current = appliedRange(id);
+                        send(sender, "bar-status-on", "range", String.valueOf(current));
                     }
                     return true;
                 }
                 case "off": {
-                    if (!receiveDisabled.contains(id)) {
-                        int remembered = lastReceiveWhenEnabled.getOrDefault(id, globalRange);
-                        lastReceiveWhenEnabled.put(id, remembered);
-                        receiveDisabled.add(id);
+                    if (!players.get(id).isDisabled()) {
+                        rememberCurrentRange(id);
+                        setReceiveDisabled(id, true);
                         setReceiveRange(p, 0);
-                        saveData();
                     }
                     send(sender, "bar-off");
                     return true;
                 }
                 case "on": {
-                    if (receiveDisabled.remove(id)) {
-                        applyEnabledReceive(p);
-                        saveData();
-                    } else {
-                        applyEnabledReceive(p);
-                    }
+                    setReceiveDisabled(id, false);
+                    syncRangeEpoch(id);
+                    applyEnabledReceive(p);
                     send(sender, "bar-on");
                     return true;
                 }
                 case "toggle": {
-                    if (receiveDisabled.contains(id)) {
-                        receiveDisabled.remove(id);
+                    if (players.get(id).isDisabled()) {
+                        setReceiveDisabled(id, false);
+                        syncRangeEpoch(id);
                         applyEnabledReceive(p);
-                        saveData();
                         send(sender, "bar-on");
                     } else {
-                        int remembered = lastReceiveWhenEnabled.getOrDefault(id, globalRange);
-                        lastReceiveWhenEnabled.put(id, remembered);
-                        receiveDisabled.add(id);
+                        rememberCurrentRange(id);
+                        setReceiveDisabled(id, true);
                         setReceiveRange(p, 0);
-                        saveData();
                         send(sender, "bar-off");
                     }
                     return true;
                 }
                 default:
-                    send(sender, "bar-usage", map("label", label));
+                    send(sender, "bar-usage", "label", label);
                     return true;
             }
         }
@@ -399,44 +1151,167 @@ public class LocatorBarTweaks extends JavaPlugin implements Listener {
                 return true;
             }
             if (args.length != 1) {
-                send(sender, "color-usage", map("label", label));
+                send(sender, "color-usage", "label", label);
                 return true;
             }
             Player p = (Player) sender;
-            String input = args[0];
+            WaypointColor color = WaypointColor.parse(args[0]);
+            if (color == null) {
+                send(sender, "color-invalid", "input", args[0]);
+                return true;
+            }
 
-            preferredColor.put(p.getUniqueId(), input);
-            saveData();
-            setWaypointColor(p, input);
+            setPreferredColor(p.getUniqueId(), color);
+            setWaypointColor(p, color);
 
-            send(sender, "color-updated", map("input", input));
+            send(sender, "color-updated", "input", color.raw(), "color", color.display());
             return true;
         }
 
         return false;
     }
 
-    private Map<String, String> map(String k, String v) {
-        Map<String, String> m = new HashMap<>();
-        m.put(k, v);
-        return m;
+    // ---------------- LocatorBarService (reads: any thread) ----------------
+    @Override
+    public boolean isEnabled(UUID id) {
+        return !players.get(id).isDisabled();
+    }
+
+    @Override
+    public int getRange(UUID id) {
+        return players.get(id).isDisabled() ? 0 : uncappedRange(id);
+    }
+
+    @Override
+    public boolean hasCustomRange(UUID id) {
+        return players.get(id).isCustomRange();
     }
 
-    // ---------------- Accessors for PAPI ----------------
+    @Override
+    public int getColorRgb(UUID id) {
+        return WaypointColor.rgbOf(players.get(id).color);
+    }
+
+    @Override
+    public ChatColor getNamedColor(UUID id) {
+        return WaypointColor.namedOf(players.get(id).color);
+    }
+
+    @Override
+    public Batch batch() {
+        return new ChangeBatch(this::commitBatch);
+    }
+
+    /**
+     * Lazy stores first load offline players' records off the main thread, so a partial change never
+     * replaces a stored record; then the whole batch is applied in one pass on the global thread.
+     */
+    private CompletableFuture<Void> commitBatch(Map<UUID, ChangeBatch.Change> changes) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        Runnable apply = () -> GlobalThread.run(this, () -> {
+            try {
+                applyBatch(changes);
+                done.complete(null);
+            } catch (RuntimeException e) {
+                done.completeExceptionally(e);
+            }
+        });
+        if (!store.isLazy()) {
+            apply.run();
+        } else {
+            Bukkit.getAsyncScheduler().runNow(this, t -> {
+                try {
+                    for (UUID id : changes.keySet()) {
+                        if (Bukkit.getPlayer(id) == null) loadResident(id);
+                    }
+                } catch (IOException e) {
+                    // Applying on top of an unread record would overwrite the stored one
+                    done.completeExceptionally(e);
+                    return;
+                }
+                apply.run();
+            });
+        }
+        return done;
+    }
+
+    /** Same semantics as the commands; stored through write-behind, online players queued on the apply queue. */
+    private void applyBatch(Map<UUID, ChangeBatch.Change> changes) {
+        AuditLog.Source outer = auditSource;
+        auditSource = AuditLog.Source.API;
+        try {
+            applyBatchChanges(changes);
+        } finally {
+            auditSource = outer;
+        }
+    }
+
+    private void applyBatchChanges(Map<UUID, ChangeBatch.Change> changes) {
+        for (Map.Entry<UUID, ChangeBatch.Change> e : changes.entrySet()) {
+            UUID id = e.getKey();
+            ChangeBatch.Change c = e.getValue();
+            if (c.range == ChangeBatch.RESET_RANGE) {
+                setRememberedRange(id, globalRange, rangeEpoch);
+            } else if (c.range != ChangeBatch.UNSET) {
+                setRememberedRange(id, c.range, PlayerState.CUSTOM_EPOCH);
+            }
+            if (c.enabled != null) {
+                if (!c.enabled) rememberCurrentRange(id);
+                setReceiveDisabled(id, !c.enabled);
+                if (c.enabled) syncRangeEpoch(id);
+            }
+            if (c.color != null) setPreferredColor(id, c.color);
+
+            Player p = Bukkit.getPlayer(id);
+            if (p == null) {
+                if (store.isLazy()) pendingUnload.add(id); // written by the next flush, then dropped
+                continue;
+            }
+            if (players.get(id).isDisabled()) {
+                setReceiveRange(p, 0);
+            } else {
+                applyCappedRanges(p);
+            }
+            if (c.color != null) setWaypointColor(p, c.color);
+        }
+    }
+
+    /** One LocatorBarChangeEvent per tick for everyone changed since the last one (nothing without listeners). */
+    private void fireChanges() {
+        if (changedPlayers.isEmpty()) return;
+        if (LocatorBarChangeEvent.getHandlerList().getRegisteredListeners().length == 0) {
+            changedPlayers.clear();
+            return;
+        }
+        Set<UUID> ids = Collections.unmodifiableSet(new LinkedHashSet<>(changedPlayers));
+        changedPlayers.clear();
+        Bukkit.getPluginManager().callEvent(new LocatorBarChangeEvent(ids));
+    }
+
+    // ---------------- Legacy accessors (any thread) ----------------
     public boolean isReceiveDisabled(UUID id) {
-        return receiveDisabled.contains(id);
+        return players.get(id).isDisabled();
     }
 
     public int getRememberedRange(UUID id) {
-        if (isReceiveDisabled(id)) return 0;
-        return lastReceiveWhenEnabled.getOrDefault(id, globalRange);
+        PlayerState st = players.get(id);
+        if (st.isDisabled()) return 0;
+        return rememberedRange(st);
     }
 
     public String getPreferredColor(UUID id) {
-        return preferredColor.getOrDefault(id, "unset");
+        PlayerState st = players.get(id);
+        return st.hasColor() ? st.waypointColor().raw() : "unset";
     }
 
+    @Override
     public int getGlobalRange() {
         return globalRange;
     }
-}
\ No newline at end of file
+
+    @Override
+    public int getEffectiveRange() {
+        AdaptiveRange a = adaptive;
+        return a == null ? globalRange : a.effective(globalRange);
+    }
+}
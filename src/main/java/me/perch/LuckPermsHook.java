@@ -0,0 +1,27 @@
+package me.perch;
+
+import net.luckperms.api.LuckPermsProvider;
+import net.luckperms.api.event.user.UserDataRecalculateEvent;
+import org.bukkit.plugin.Plugin;
+
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Pushes LuckPerms permission changes to {@link RangeTiers} instead of polling.
+ * Only loaded when the LuckPerms plugin is present, so the API classes are never touched otherwise.
+ */
+final class LuckPermsHook {
+
+    private LuckPermsHook() {
+    }
+
+    /**
+     * Report the UUID of every user whose permission data was recalculated (LuckPerms' thread).
+     * Close the returned subscription to stop.
+     */
+    static AutoCloseable subscribe(Plugin plugin, Consumer<UUID> changed) {
+        return LuckPermsProvider.get().getEventBus().subscribe(plugin, UserDataRecalculateEvent.class,
+                e -> changed.accept(e.getUser().getUniqueId()));
+    }
+}
@@ -0,0 +1,185 @@
+package me.perch;
+
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Player-facing messages, compiled once per (re)load.
+ * - Each message is colorized and split into literal/{placeholder} segments up front
+ * - The prefix is baked into every template; blank messages are flagged and never sent
+ * - Instances are immutable, so a reload can swap them in with a single reference write
+ */
+final class Messages {
+
+    /** Compiled message: literals[i] is followed by the value of names[i]; one literal more than names. */
+    static final class Template {
+        final String[] literals;
+        final String[] names;
+        final boolean blank;
+        private final String constant; // whole message when there are no placeholders
+
+        Template(String[] literals, String[] names, boolean blank) {
+            this.literals = literals;
+            this.names = names;
+            this.blank = blank;
+            this.constant = names.length == 0 ? literals[0] : null;
+        }
+
+        /** params = key1, value1, key2, value2, ... Unknown placeholders are kept as {name}. */
+        String render(String... params) {
+            if (constant != null) return constant;
+            StringBuilder sb = new StringBuilder(64);
+            for (int i = 0; i < names.length; i++) {
+                sb.append(literals[i]);
+                String v = lookup(names[i], params);
+                if (v != null) sb.append(v); else sb.append('{').append(names[i]).append('}');
+            }
+            return sb.append(literals[names.length]).toString();
+        }
+
+        private static String lookup(String name, String[] params) {
+            for (int i = 0; i + 1 < params.length; i += 2) {
+                if (params[i].equals(name)) return params[i + 1];
+            }
+            return null;
+        }
+    }
+
+    private static final Template BLANK = new Template(new String[]{""}, new String[0], true);
+
+    private final Map<String, Template> templates;
+
+    private Messages(Map<String, Template> templates) {
+        this.templates = templates;
+    }
+
+    /** Send key to the recipient; blank messages are suppressed entirely (no prefix). */
+    void send(CommandSender to, String key, String... params) {
+        Template t = get(key);
+        if (t.blank) return;
+        to.sendMessage(t.render(params));
+    }
+
+    Template get(String key) {
+        return templates.getOrDefault(key, BLANK);
+    }
+
+    // ---------------- Compilation ----------------
+    static Messages compile(ConfigurationSection cfg) {
+        String prefix = colorize(raw(cfg, "prefix"));
+        if (isBlankText(prefix)) prefix = "";
+
+        Map<String, Template> out = new HashMap<>();
+        for (String key : DEFAULT_KEYS) out.put(key, compile(prefix, raw(cfg, key)));
+        ConfigurationSection section = cfg.getConfigurationSection("messages");
+        if (section != null) {
+            for (String key : section.getKeys(false)) {
+                if (!out.containsKey(key)) out.put(key, compile(prefix, raw(cfg, key)));
+            }
+        }
+        return new Messages(out);
+    }
+
+    private static Template compile(String prefix, String raw) {
+        String text = colorize(raw);
+        List<String> literals = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        StringBuilder lit = new StringBuilder(prefix);
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            int close = c == '{' ? text.indexOf('}', i + 1) : -1;
+            if (close > i + 1 && isName(text, i + 1, close)) {
+                literals.add(lit.toString());
+                lit.setLength(0);
+                names.add(text.substring(i + 1, close));
+                i = close + 1;
+            } else {
+                lit.append(c);
+                i++;
+            }
+        }
+        literals.add(lit.toString());
+        // Only literal-only messages can be known blank up front; "{x}"-only messages are sent as-is
+        boolean blank = names.isEmpty() && isBlankText(text);
+        return new Template(literals.toArray(new String[0]), names.toArray(new String[0]), blank);
+    }
+
+    private static boolean isName(String s, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (!(Character.isLetterOrDigit(c) || c == '_' || c == '-')) return false;
+        }
+        return true;
+    }
+
+    private static String colorize(String s) {
+        if (s == null) return "";
+        return ChatColor.translateAlternateColorCodes('&', s);
+    }
+
+    private static boolean isBlankText(String s) {
+        return s == null || ChatColor.stripColor(s).trim().isEmpty();
+    }
+
+    private static String raw(ConfigurationSection cfg, String key) {
+        String val = cfg.getString("messages." + key);
+        return val != null ? val : fallback(key);
+    }
+
+    // Fallback defaults (mirror keys in default config)
+    private static final String[] DEFAULT_KEYS = {
+            "no-permission", "players-only", "invalid-number",
+            "range-usage", "range-set", "range-progress", "range-progress-idle",
+            "bar-usage", "bar-status-on", "bar-status-off", "bar-on", "bar-off",
+            "color-usage", "color-updated", "color-invalid",
+            "stats-header", "stats-timer", "stats-value",
+            "compact-started", "compact-done",
+            "reload-done", "reload-failed", "reload-restart",
+            "history-usage", "history-disabled", "player-unknown", "history-empty", "history-header", "history-entry",
+            "storage-unavailable"
+    };
+
+    private static String fallback(String key) {
+        switch (key) {
+            case "prefix": return "&7[&bLocator&7] ";
+            case "no-permission": return "&cNo permission.";
+            case "players-only": return "&cPlayers only.";
+            case "invalid-number": return "&cNot a number: {input}";
+            case "range-usage": return "&eUsage: /{label} <blocks|progress>";
+            case "range-set": return "&aLocator Bar range set to &b{range}&a for players who have their bar &aON&a.";
+            case "range-progress": return "&7Range rollout: &e{done}&7/&e{total}&7 players updated (&e{queued}&7 queued).";
+            case "range-progress-idle": return "&7No range rollout in progress.";
+            case "bar-usage": return "&eUsage: /{label} <on|off|toggle|status>";
+            case "bar-status-on": return "&aYour locator bar is &aON&a at &b{range}&a.";
+            case "bar-status-off": return "&eYour locator bar is &cOFF&e (others still see you).";
+            case "bar-on": return "&aYour locator bar is now &aON&a.";
+            case "bar-off": return "&aYour locator bar is now &cOFF&a (others still see you).";
+            case "color-usage": return "&eUsage: /{label} <named|#RRGGBB|RRGGBB|reset>";
+            case "color-updated": return "&aLocator color updated to &b{input}&a.";
+            case "color-invalid": return "&cUnknown color: {input}. Use a vanilla color name, #RRGGBB or reset.";
+            case "stats-header": return "&bLocatorBarTweaks stats &7(latency ms: p50 / p99 / max)";
+            case "stats-timer": return "&7{name}: &f{count}&7 calls, &f{p50}&7 / &f{p99}&7 / &f{max}";
+            case "stats-value": return "&7{name}: &f{value}";
+            case "compact-started": return "&7Compacting player data...";
+            case "compact-done": return "&aCompaction removed &e{records}&a records and reclaimed &e{reclaimed}&a (&7{before} → {after}&a).";
+            case "reload-done": return "&aConfiguration reloaded; &e{players}&a players updated.";
+            case "reload-failed": return "&cconfig.yml was not reloaded: &e{error}";
+            case "reload-restart": return "&eChanged settings take effect after a restart: &f{sections}";
+            case "history-usage": return "&eUsage: /{label} <player|uuid> [limit]";
+            case "history-disabled": return "&cThe audit log is disabled (audit.enabled).";
+            case "player-unknown": return "&cUnknown player: {input}";
+            case "history-empty": return "&7No recent changes for &e{player}&7.";
+            case "history-header": return "&aLast &e{count}&a changes for &e{player}&a:";
+            case "history-entry": return "&7{time} &8[{source}] &e{field}&7: {old} → {new}";
+            case "storage-unavailable": return "&cYour locator settings could not be loaded. Please try again in a moment.";
+            default: return "";
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package me.perch;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * In-process instrumentation: call counters, latency histograms, byte counters and gauges.
+ * - Lock-free recording from any thread; timers are looked up once and kept by callers
+ * - Histograms use power-of-two microsecond buckets, so percentiles are bucket upper bounds
+ * - {@link #writePrometheus(Path)} renders the node-exporter textfile format
+ */
+final class Metrics {
+
+    /** Bucket i counts samples below 2^i µs; the last bucket is open-ended (~2s+). */
+    private static final int BUCKETS = 22;
+
+    static final class Timer {
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sumNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void record(long nanos) {
+            long micros = Math.max(0, nanos) / 1000;
+            int idx = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+            buckets.incrementAndGet(idx);
+            count.increment();
+            sumNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        /** Record the time elapsed since startNanos (from System.nanoTime()). */
+        void since(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        long count() { return count.sum(); }
+
+        long maxNanos() { return maxNanos.get(); }
+
+        /** Upper bound (nanos) of the bucket holding the q-quantile; 0 if no samples. */
+        long percentileNanos(double q) {
+            long total = 0;
+            long[] snap = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) total += snap[i] = buckets.get(i);
+            if (total == 0) return 0;
+            long rank = (long) Math.ceil(q * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += snap[i];
+                if (seen >= rank) return i == BUCKETS - 1 ? maxNanos() : (1L << i) * 1000L;
+            }
+            return maxNanos();
+        }
+    }
+
+    private final Map<String, Timer> timers = new ConcurrentSkipListMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    Timer timer(String name) {
+        return timers.computeIfAbsent(name, k -> new Timer());
+    }
+
+    LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, k -> new LongAdder());
+    }
+
+    /** Register a value read on demand (e.g. a queue size). Suppliers must tolerate being called off-thread. */
+    void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    Map<String, Timer> timers() { return timers; }
+
+    Map<String, LongAdder> counters() { return counters; }
+
+    Map<String, LongSupplier> gauges() { return gauges; }
+
+    // ---------------- Placeholder values ----------------
+    /**
+     * Resolves "stat_*" placeholders (prefix already removed):
+     * - <timer>_count | _p50 | _p99 | _max  (latencies in ms)
+     * - <counter> or <gauge> by name
+     */
+    String placeholder(String key) {
+        LongAdder c = counters.get(key);
+        if (c != null) return String.valueOf(c.sum());
+        LongSupplier g = gauges.get(key);
+        if (g != null) return String.valueOf(g.getAsLong());
+
+        int us = key.lastIndexOf('_');
+        if (us <= 0) return null;
+        Timer t = timers.get(key.substring(0, us));
+        if (t == null) return null;
+        switch (key.substring(us + 1)) {
+            case "count": return String.valueOf(t.count());
+            case "p50": return millis(t.percentileNanos(0.50));
+            case "p99": return millis(t.percentileNanos(0.99));
+            case "max": return millis(t.maxNanos());
+            default: return null;
+        }
+    }
+
+    static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0);
+    }
+
+    // ---------------- Prometheus export ----------------
+    void writePrometheus(Path file) throws IOException {
+        StringBuilder sb = new StringBuilder(4096);
+
+        sb.append("# TYPE perchlocator_latency_seconds histogram\n");
+        for (Map.Entry<String, Timer> e : timers.entrySet()) {
+            Timer t = e.getValue();
+            String op = e.getKey();
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS - 1; i++) {
+                cumulative += t.buckets.get(i);
+                sb.append("perchlocator_latency_seconds_bucket{op=\"").append(op).append("\",le=\"")
+                        .append(String.format(Locale.ROOT, "%.6f", (1L << i) / 1_000_000.0)).append("\"} ").append(cumulative).append('\n');
+            }
+            long count = t.count();
+            sb.append("perchlocator_latency_seconds_bucket{op=\"").append(op).append("\",le=\"+Inf\"} ").append(count).append('\n');
+            sb.append("perchlocator_latency_seconds_sum{op=\"").append(op).append("\"} ")
+                    .append(String.format(Locale.ROOT, "%.9f", t.sumNanos.sum() / 1_000_000_000.0)).append('\n');
+            sb.append("perchlocator_latency_seconds_count{op=\"").append(op).append("\"} ").append(count).append('\n');
+        }
+
+        for (Map.Entry<String, LongAdder> e : counters.entrySet()) {
+            String name = "perchlocator_" + e.getKey() + "_total";
+            sb.append("# TYPE ").append(name).append(" counter\n");
+            sb.append(name).append(' ').append(e.getValue().sum()).append('\n');
+        }
+
+        for (Map.Entry<String, LongSupplier> e : gauges.entrySet()) {
+            String name = "perchlocator_" + e.getKey();
+            sb.append("# TYPE ").append(name).append(" gauge\n");
+            sb.append(name).append(' ').append(e.getValue().getAsLong()).append('\n');
+        }
+
+        // textfile collector requires atomic replacement
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tmp, sb.toString().getBytes(StandardCharsets.UTF_8));
+        DataStore.moveAtomically(tmp, file);
+    }
+}
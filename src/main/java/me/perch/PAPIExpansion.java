@@ -5,15 +5,25 @@ import org.bukkit.ChatColor;
 import org.bukkit.OfflinePlayer;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.Locale;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class PAPIExpansion extends PlaceholderExpansion {
 
-    private final LocatorBarTweaks plugin;
+    private final LocatorBarService service;
+    private final String version;
+    private final Metrics metrics;
+    private final Metrics.Timer requestTimer;
 
-    public PAPIExpansion(LocatorBarTweaks plugin) {
-        this.plugin = plugin;
+    PAPIExpansion(LocatorBarTweaks plugin, Metrics metrics) {
+        this(plugin, plugin.getDescription().getVersion(), metrics);
+    }
+
+    PAPIExpansion(LocatorBarService service, String version, Metrics metrics) {
+        this.service = service;
+        this.version = version;
+        this.metrics = metrics;
+        this.requestTimer = metrics.timer("placeholder");
     }
 
     @Override
@@ -28,7 +38,7 @@ public class PAPIExpansion extends PlaceholderExpansion {
 
     @Override
     public @NotNull String getVersion() {
-        return plugin.getDescription().getVersion();
+        return version;
     }
 
     @Override
@@ -43,107 +53,111 @@ public class PAPIExpansion extends PlaceholderExpansion {
         UUID id = player.getUniqueId();
         if (id == null) return "";
 
-        switch (params.toLowerCase(Locale.ROOT)) {
-            case "status": // "ON"/"OFF"
-                return plugin.isReceiveDisabled(id) ? "OFF" : "ON";
-
-            case "status_symbol": // "✔" / "✖"
-                return plugin.isReceiveDisabled(id) ? "✖" : "✔";
-
-            case "status_bool": // "true"/"false" (useful in DeluxeMenus conditions)
-                return String.valueOf(!plugin.isReceiveDisabled(id));
-
-            case "range": // "0" if OFF, otherwise remembered/global
-                return String.valueOf(plugin.getRememberedRange(id));
-
-            case "color": // formatted, correctly colored, with each word capitalized
-                return formatColorDisplay(plugin.getPreferredColor(id));
-
-            case "color_raw": // raw stored preference (name or hex or "unset")
-                return plugin.getPreferredColor(id);
-
-            case "global_range":
-                return String.valueOf(plugin.getGlobalRange());
-
-            default:
-                return null; // unknown placeholder -> let PAPI try others
+        long start = System.nanoTime();
+        try {
+            int key = keyOf(params);
+            if (key >= 0) return rendered(id, player.isOnline()).values[key];
+            // stat_<timer>_<count|p50|p99|max>, stat_<counter>, stat_<gauge>
+            if (params.regionMatches(true, 0, "stat_", 0, 5)) return metrics.placeholder(params.substring(5));
+            return null; // unknown placeholder -> let PAPI try others
+        } finally {
+            requestTimer.since(start);
         }
     }
 
-    // -------- Color formatting helpers --------
-
-    private String formatColorDisplay(String stored) {
-        if (stored == null || stored.equalsIgnoreCase("unset")) {
-            return ChatColor.WHITE + titleCase("default");
-        }
-
-        String s = stored.trim();
-
-        // Handle reset
-        if (s.equalsIgnoreCase("reset")) {
-            return ChatColor.WHITE + titleCase("default");
-        }
+    /** Drop a player's cached values (called on quit). */
+    void invalidate(UUID id) {
+        cache.remove(id);
+    }
 
-        // Hex like #RRGGBB or RRGGBB
-        if (s.startsWith("#")) s = s.substring(1);
-        if (s.matches("(?i)^[0-9A-F]{6}$")) {
-            String legacyHex = toLegacyHexColorCode(s.toUpperCase(Locale.ROOT));
-            return legacyHex + "#" + s.toUpperCase(Locale.ROOT);
+    // -------- Per-player render cache --------
+    // Built on LocatorBarService's typed reads: the read values themselves are the version stamp,
+    // so unchanged state -> the exact same precomputed strings, without allocating.
+
+    private static final String[] KEYS = {
+            "status",        // "ON"/"OFF"
+            "status_symbol", // "✔" / "✖"
+            "status_bool",   // "true"/"false" (useful in DeluxeMenus conditions)
+            "range",         // "0" if OFF, otherwise remembered/global or range tier, capped while overloaded
+            "color",         // formatted, correctly colored, with each word capitalized
+            "color_raw",     // raw stored preference (name or hex or "unset")
+            "global_range",  // effective range (configured range unless adaptive mode is capping it)
+            "effective_range",
+            "configured_range"
+    };
+
+    private static final class Rendered {
+        final boolean enabled;
+        final int range;
+        final int rgb;
+        final ChatColor named;
+        final int globalRange;
+        final int effectiveRange;
+        final String[] values;
+
+        Rendered(boolean enabled, int range, int rgb, ChatColor named, int globalRange, int effectiveRange,
+                 String[] values) {
+            this.enabled = enabled;
+            this.range = range;
+            this.rgb = rgb;
+            this.named = named;
+            this.globalRange = globalRange;
+            this.effectiveRange = effectiveRange;
+            this.values = values;
         }
 
-        // Named color: normalize to enum style (DARK_RED, LIGHT_PURPLE, etc.)
-        String enumName = s.toUpperCase(Locale.ROOT).replace(' ', '_');
-        ChatColor cc = namedToChatColor(enumName);
-        String pretty = titleCase(enumName.toLowerCase(Locale.ROOT).replace('_', ' '));
-
-        if (cc == null) cc = ChatColor.WHITE;
-        return cc + pretty;
-    }
-
-    private String titleCase(String text) {
-        if (text == null || text.isEmpty()) return text;
-        String[] parts = text.split("\\s+");
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < parts.length; i++) {
-            String w = parts[i];
-            if (!w.isEmpty()) {
-                sb.append(Character.toUpperCase(w.charAt(0)));
-                if (w.length() > 1) sb.append(w.substring(1));
-            }
-            if (i < parts.length - 1) sb.append(' ');
+        boolean matches(boolean enabled, int range, int rgb, ChatColor named, int globalRange, int effectiveRange) {
+            return this.enabled == enabled && this.range == range && this.rgb == rgb && this.named == named
+                    && this.globalRange == globalRange && this.effectiveRange == effectiveRange;
         }
-        return sb.toString();
     }
 
-    // Convert RRGGBB to §x§R§R§G§G§B§B
-    private String toLegacyHexColorCode(String hex6) {
-        StringBuilder sb = new StringBuilder("§x");
-        for (char c : hex6.toCharArray()) {
-            sb.append('§').append(c);
-        }
-        return sb.toString();
+    // online players only (dropped on quit): offline lookups (menus, leaderboards) would never be evicted
+    private final ConcurrentHashMap<UUID, Rendered> cache = new ConcurrentHashMap<>();
+
+    private Rendered rendered(UUID id, boolean online) {
+        boolean on = service.isEnabled(id);
+        int range = service.getRange(id);
+        int rgb = service.getColorRgb(id);
+        ChatColor named = service.getNamedColor(id);
+        int global = service.getGlobalRange();
+        int effective = service.getEffectiveRange();
+        Rendered r = online ? cache.get(id) : null;
+        if (r != null && r.matches(on, range, rgb, named, global, effective)) return r;
+
+        WaypointColor color = WaypointColor.of(named, rgb);
+        r = new Rendered(on, range, rgb, named, global, effective, new String[]{
+                on ? "ON" : "OFF",
+                on ? "✔" : "✖",
+                String.valueOf(on),
+                String.valueOf(range),
+                color.display(),
+                rgb == LocatorBarService.NO_COLOR ? "unset" : color.raw(),
+                String.valueOf(effective),
+                String.valueOf(effective),
+                String.valueOf(global)
+        });
+        if (online) cache.put(id, r);
+        return r;
     }
 
-    // Map vanilla color names to ChatColor
-    private ChatColor namedToChatColor(String name) {
-        switch (name) {
-            case "BLACK": return ChatColor.BLACK;
-            case "DARK_BLUE": return ChatColor.DARK_BLUE;
-            case "DARK_GREEN": return ChatColor.DARK_GREEN;
-            case "DARK_AQUA": return ChatColor.DARK_AQUA;
-            case "DARK_RED": return ChatColor.DARK_RED;
-            case "DARK_PURPLE": return ChatColor.DARK_PURPLE;
-            case "GOLD": return ChatColor.GOLD;
-            case "GRAY": return ChatColor.GRAY;
-            case "DARK_GRAY": return ChatColor.DARK_GRAY;
-            case "BLUE": return ChatColor.BLUE;
-            case "GREEN": return ChatColor.GREEN;
-            case "AQUA": return ChatColor.AQUA;
-            case "RED": return ChatColor.RED;
-            case "LIGHT_PURPLE": return ChatColor.LIGHT_PURPLE;
-            case "YELLOW": return ChatColor.YELLOW;
-            case "WHITE": return ChatColor.WHITE;
-            default: return null;
+    /** Index into KEYS without allocating a lowercase copy; exact match first, then case-insensitive. */
+    private static int keyOf(String params) {
+        switch (params) {
+            case "status": return 0;
+            case "status_symbol": return 1;
+            case "status_bool": return 2;
+            case "range": return 3;
+            case "color": return 4;
+            case "color_raw": return 5;
+            case "global_range": return 6;
+            case "effective_range": return 7;
+            case "configured_range": return 8;
+            default:
+                for (int i = 0; i < KEYS.length; i++) {
+                    if (KEYS[i].equalsIgnoreCase(params)) return i;
+                }
+                return -1;
         }
     }
 }
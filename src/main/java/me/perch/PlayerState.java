@@ -0,0 +1,82 @@
+package me.perch;
+
+/**
+ * Immutable per-player locator state (one entry per player instead of three map entries).
+ * Color is kept packed as an int; see {@link WaypointColor}.
+ * The remembered range carries the global range epoch it was set under, so a later /locatorrange
+ * can be applied lazily when the player returns (see {@link #CUSTOM_EPOCH} for opting out).
+ * Updates create a new instance, so readers on any thread always see a consistent record.
+ */
+final class PlayerState {
+
+    static final int DISABLED = 1;
+    static final int HAS_RANGE = 1 << 1;
+    static final int HAS_COLOR = 1 << 2;
+
+    /** Range epoch of a range chosen for this player specifically; global range changes never replace it. */
+    static final int CUSTOM_EPOCH = -1;
+
+    static final PlayerState EMPTY = new PlayerState(0, 0, WaypointColor.NONE, 0, 0);
+
+    final int flags;
+    final int range;
+    final int color; // WaypointColor#packed()
+    final int epoch; // global range epoch the range was set under (0 for records from before epochs)
+    final int lastSeen; // UTC epoch day of the last join/quit, 0 if unknown
+
+    private PlayerState(int flags, int range, int color, int epoch, int lastSeen) {
+        this.flags = flags;
+        this.range = range;
+        this.color = color;
+        this.epoch = epoch;
+        this.lastSeen = lastSeen;
+    }
+
+    /** Rebuild a record from its stored fields (storage decoding). */
+    static PlayerState of(int flags, int range, int color, int epoch, int lastSeen) {
+        flags &= DISABLED | HAS_RANGE | HAS_COLOR;
+        if (flags == 0) return EMPTY;
+        boolean hasRange = (flags & HAS_RANGE) != 0;
+        return new PlayerState(flags, hasRange ? range : 0, (flags & HAS_COLOR) != 0 ? color : WaypointColor.NONE,
+                hasRange ? epoch : 0, Math.max(0, lastSeen));
+    }
+
+    boolean isDisabled() { return (flags & DISABLED) != 0; }
+
+    boolean hasRange() { return (flags & HAS_RANGE) != 0; }
+
+    boolean hasColor() { return (flags & HAS_COLOR) != 0; }
+
+    /** Remembered range, or def if none was stored. */
+    int rangeOr(int def) { return hasRange() ? range : def; }
+
+    boolean isCustomRange() { return hasRange() && epoch == CUSTOM_EPOCH; }
+
+    PlayerState withDisabled(boolean disabled) {
+        if (disabled == isDisabled()) return this;
+        return new PlayerState(disabled ? flags | DISABLED : flags & ~DISABLED, range, color, epoch, lastSeen);
+    }
+
+    PlayerState withRange(int range, int epoch) {
+        if (hasRange() && this.range == range && this.epoch == epoch) return this;
+        return new PlayerState(flags | HAS_RANGE, range, color, epoch, lastSeen);
+    }
+
+    /** Only records that hold something are stamped; an empty record stays empty. */
+    PlayerState withLastSeen(int day) {
+        if (isEmpty() || lastSeen == day) return this;
+        return new PlayerState(flags, range, color, epoch, day);
+    }
+
+    /** Stored color, or reset if none. */
+    WaypointColor waypointColor() { return WaypointColor.of(color); }
+
+    /** Reset (NONE) clears the stored color. */
+    PlayerState withColor(WaypointColor c) {
+        if (c.isReset()) return hasColor() ? new PlayerState(flags & ~HAS_COLOR, range, WaypointColor.NONE, epoch, lastSeen) : this;
+        if (hasColor() && c.packed() == color) return this;
+        return new PlayerState(flags | HAS_COLOR, range, c.packed(), epoch, lastSeen);
+    }
+
+    boolean isEmpty() { return flags == 0; }
+}
@@ -0,0 +1,95 @@
+package me.perch;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Concurrent UUID -> {@link PlayerState} store.
+ * - Reads are lock-free and safe from any thread (e.g. async PlaceholderAPI requests)
+ * - Writes replace the whole immutable record atomically (compute); each setter reports whether anything changed
+ */
+final class PlayerStateStore {
+
+    private final ConcurrentHashMap<UUID, PlayerState> states = new ConcurrentHashMap<>();
+
+    PlayerState get(UUID id) {
+        return states.getOrDefault(id, PlayerState.EMPTY);
+    }
+
+    boolean setDisabled(UUID id, boolean disabled) {
+        return update(id, s -> s.withDisabled(disabled));
+    }
+
+    boolean setRange(UUID id, int range, int epoch) {
+        return update(id, s -> s.withRange(range, epoch));
+    }
+
+    boolean setColor(UUID id, WaypointColor color) {
+        return update(id, s -> s.withColor(color));
+    }
+
+    boolean setLastSeen(UUID id, int day) {
+        return update(id, s -> s.withLastSeen(day));
+    }
+
+    private boolean update(UUID id, UnaryOperator<PlayerState> fn) {
+        boolean[] changed = {false};
+        states.compute(id, (k, prev) -> {
+            PlayerState cur = prev == null ? PlayerState.EMPTY : prev;
+            PlayerState next = fn.apply(cur);
+            changed[0] = next != cur;
+            return next.isEmpty() ? null : next;
+        });
+        return changed[0];
+    }
+
+    /**
+     * Make a lazily loaded record resident, replacing the resident one only if it is still expected
+     * (same instance, EMPTY for none): a record changed meanwhile is newer than what was loaded.
+     */
+    boolean loadIfUnchanged(UUID id, PlayerState expected, PlayerState st) {
+        boolean[] loaded = {false};
+        states.compute(id, (k, prev) -> {
+            if ((prev == null ? PlayerState.EMPTY : prev) != expected) return prev;
+            loaded[0] = true;
+            return st.isEmpty() ? null : st;
+        });
+        return loaded[0];
+    }
+
+    /** Drop a record from memory (it must already be persisted). */
+    void unload(UUID id) {
+        states.remove(id);
+    }
+
+    /** Remove every record matching drop (re-checked atomically per entry); removed ids go to onRemoved. */
+    int removeIf(Predicate<PlayerState> drop, Consumer<UUID> onRemoved) {
+        int removed = 0;
+        for (UUID id : states.keySet()) {
+            boolean[] hit = {false};
+            states.computeIfPresent(id, (k, st) -> {
+                hit[0] = drop.test(st);
+                return hit[0] ? null : st;
+            });
+            if (hit[0]) {
+                removed++;
+                onRemoved.accept(id);
+            }
+        }
+        return removed;
+    }
+
+    int size() {
+        return states.size();
+    }
+
+    /** Shallow copy; records are immutable so this is a consistent-per-player snapshot. */
+    Map<UUID, PlayerState> copy() {
+        return new HashMap<>(states);
+    }
+}
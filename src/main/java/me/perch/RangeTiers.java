@@ -0,0 +1,82 @@
+package me.perch;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Permission-based range tiers (range-tiers.tiers: name -> blocks, permission perchlocator.range.name).
+ * - A player's tier range is resolved once (the highest range among the tier permissions they hold)
+ *   and cached; applies and placeholders read the cache instead of calling hasPermission per tier
+ * - Resolved on join and when permissions may have changed (LuckPerms event or periodic re-check),
+ *   forgotten on quit
+ * - Reads are safe from any thread; {@link #resolve} runs on the global thread
+ */
+final class RangeTiers {
+
+    static final String PERMISSION_PREFIX = "perchlocator.range.";
+
+    /** No tier: the player gets the global range. */
+    static final int NONE = -1;
+
+    private final String[] permissions; // sorted by range, highest first
+    private final int[] ranges;
+    private final ConcurrentHashMap<UUID, Integer> resolved = new ConcurrentHashMap<>();
+
+    private RangeTiers(String[] permissions, int[] ranges) {
+        this.permissions = permissions;
+        this.ranges = ranges;
+    }
+
+    /** Tiers from a name -> blocks section; non-positive ranges are ignored. */
+    static RangeTiers fromConfig(ConfigurationSection section) {
+        List<Map.Entry<String, Integer>> tiers = new ArrayList<>();
+        if (section != null) {
+            for (String name : section.getKeys(false)) {
+                int range = section.getInt(name, 0);
+                if (range > 0) tiers.add(new AbstractMap.SimpleEntry<>(PERMISSION_PREFIX + name, range));
+            }
+        }
+        tiers.sort((a, b) -> Integer.compare(b.getValue(), a.getValue()));
+        String[] permissions = new String[tiers.size()];
+        int[] ranges = new int[tiers.size()];
+        for (int i = 0; i < tiers.size(); i++) {
+            permissions[i] = tiers.get(i).getKey();
+            ranges[i] = tiers.get(i).getValue();
+        }
+        return new RangeTiers(permissions, ranges);
+    }
+
+    boolean isEmpty() {
+        return ranges.length == 0;
+    }
+
+    int size() {
+        return ranges.length;
+    }
+
+    /** Cached tier range of an online player, or {@link #NONE}. */
+    int range(UUID id) {
+        Integer r = resolved.get(id);
+        return r == null ? NONE : r;
+    }
+
+    /** Check the player's permissions again; returns true if their tier range changed. */
+    boolean resolve(Player p) {
+        int range = NONE;
+        for (int i = 0; i < permissions.length; i++) {
+            if (p.hasPermission(permissions[i])) {
+                range = ranges[i];
+                break;
+            }
+        }
+        Integer old = resolved.put(p.getUniqueId(), range);
+        return old == null ? range != NONE : old != range;
+    }
+
+    void forget(UUID id) {
+        resolved.remove(id);
+    }
+}
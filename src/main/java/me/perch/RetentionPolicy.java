@@ -0,0 +1,49 @@
+package me.perch;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+
+/**
+ * Which player records compaction may drop (retention.*).
+ * - Idle: last seen more than maxIdleDays ago (records without a last-seen day are stamped instead)
+ * - Defaults: bar ON, no color, and no range or the global range (not customized). On return an enabled
+ *   player without a record follows the current global range, like a non-custom record after lazy epoch
+ *   propagation, so dropping these changes nothing. With a shared store every non-custom range counts,
+ *   whatever its value: it follows each server's own global range
+ */
+final class RetentionPolicy {
+
+    final int maxIdleDays; // 0 = never drop for inactivity
+    final boolean dropDefaults;
+    final int globalRange;
+    final boolean sharedRanges; // DataStore#isShared: non-custom ranges are not compared to globalRange
+    final int today;
+
+    RetentionPolicy(int maxIdleDays, boolean dropDefaults, int globalRange, boolean sharedRanges) {
+        this.maxIdleDays = Math.max(0, maxIdleDays);
+        this.dropDefaults = dropDefaults;
+        this.globalRange = globalRange;
+        this.sharedRanges = sharedRanges;
+        this.today = today();
+    }
+
+    static int today() {
+        return (int) LocalDate.now(ZoneOffset.UTC).toEpochDay();
+    }
+
+    boolean drops(PlayerState st) {
+        if (maxIdleDays > 0 && st.lastSeen > 0 && today - st.lastSeen > maxIdleDays) return true;
+        return dropDefaults && isDefault(st);
+    }
+
+    private boolean isDefault(PlayerState st) {
+        if (st.isDisabled() || st.hasColor()) return false;
+        if (!st.hasRange()) return true;
+        return !st.isCustomRange() && (sharedRanges || st.range == globalRange);
+    }
+
+    /** Same record with a last-seen day, so records from before last-seen tracking can expire too. */
+    PlayerState stamped(PlayerState st) {
+        return st.lastSeen == 0 ? st.withLastSeen(today) : st;
+    }
+}
@@ -0,0 +1,268 @@
+package me.perch;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Lazy, sharded persistence (storage.type: sharded).
+ * - Records live in 256 shard files (shards/xx.bin, xx = first two hex digits of the UUID)
+ * - Nothing is loaded at startup; a player's record is read on pre-login and dropped after quit
+ * - Mutations only mark the UUID dirty; a flush rewrites just the shards that contain dirty players
+ * - Records captured for writing stay visible to {@link #loadPlayer(UUID)} until the shard is on disk,
+ *   so a quick quit/rejoin never reads a stale shard
+ * - If the shard folder does not exist yet but data.yml does, it is migrated once (data.yml.migrated)
+ */
+final class ShardedDataStore implements DataStore {
+
+    private static final int SHARD_MAGIC = 0x504C4248; // "PLBH"
+    private static final byte SHARD_VERSION = 3; // v1: no range epoch, v1-2: no last-seen day
+
+    private final File folder;
+    private final File shardFolder;
+    private final Logger log;
+    private final Metrics metrics;
+    private PlayerStateStore players;
+
+    private final DirtyTracker tracker = new DirtyTracker();
+
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "PerchLocator-ShardWriter");
+        t.setDaemon(true);
+        return t;
+    });
+
+    ShardedDataStore(File folder, Logger log, Metrics metrics) {
+        this.folder = folder;
+        this.shardFolder = new File(folder, "shards");
+        this.log = log;
+        this.metrics = metrics;
+    }
+
+    // ---------------- Load ----------------
+    @Override
+    public void load(PlayerStateStore into, int defaultRange) {
+        this.players = into;
+        File legacy = new File(folder, "data.yml");
+        if (!shardFolder.exists() && legacy.exists()) {
+            migrateFromYaml(legacy, defaultRange);
+        }
+        shardFolder.mkdirs();
+    }
+
+    @Override
+    public boolean isLazy() {
+        return true;
+    }
+
+    @Override
+    public PlayerState loadPlayer(UUID id) throws IOException {
+        if (tracker.isDirty(id)) return null;
+        PlayerState pending = tracker.inFlight(id);
+        if (pending != null) return pending;
+        try {
+            PlayerState st = readShard(shardOf(id)).get(id);
+            return st != null ? st : PlayerState.EMPTY;
+        } catch (IOException e) {
+            log.severe("Failed to read shard for " + id + ": " + e.getMessage());
+            throw e;
+        }
+    }
+
+    private void migrateFromYaml(File legacy, int defaultRange) {
+        PlayerStateStore all = new PlayerStateStore();
+        new YamlDataStore(legacy, log, metrics).load(all, defaultRange);
+        Map<Integer, Map<UUID, PlayerState>> byShard = new HashMap<>();
+        for (Map.Entry<UUID, PlayerState> e : all.copy().entrySet()) {
+            byShard.computeIfAbsent(shardOf(e.getKey()), k -> new HashMap<>()).put(e.getKey(), e.getValue());
+        }
+        shardFolder.mkdirs();
+        try {
+            for (Map.Entry<Integer, Map<UUID, PlayerState>> e : byShard.entrySet()) {
+                writeShard(e.getKey(), e.getValue());
+            }
+            if (!legacy.renameTo(new File(folder, "data.yml.migrated"))) {
+                log.warning("Could not rename data.yml to data.yml.migrated.");
+            }
+            log.info("Migrated data.yml to sharded storage (" + all.size() + " players).");
+        } catch (IOException e) {
+            log.severe("Failed to migrate data.yml: " + e.getMessage());
+        }
+    }
+
+    // ---------------- Mutations ----------------
+    @Override
+    public void disabledChanged(UUID id, boolean disabled) { tracker.mark(id); }
+
+    @Override
+    public void rangeChanged(UUID id, int range, int epoch) { tracker.mark(id); }
+
+    @Override
+    public void colorChanged(UUID id, WaypointColor color) { tracker.mark(id); }
+
+    @Override
+    public void lastSeenChanged(UUID id, int day) { tracker.mark(id); }
+
+    @Override
+    public void recordRemoved(UUID id) { tracker.mark(id); }
+
+    // ---------------- Flush ----------------
+    @Override
+    public void flush(Supplier<Snapshot> state) {
+        Map<Integer, Map<UUID, PlayerState>> byShard = capture();
+        for (Map.Entry<Integer, Map<UUID, PlayerState>> e : byShard.entrySet()) {
+            writer.execute(() -> update(e.getKey(), e.getValue()));
+        }
+    }
+
+    /**
+     * Rewrites every shard without the records the policy drops. Queued behind pending shard updates;
+     * resident players are skipped (their in-memory record is authoritative and written by flushes).
+     */
+    @Override
+    public void compact(RetentionPolicy policy, Snapshot state, Consumer<CompactionResult> done) {
+        Set<UUID> resident = state.states.keySet();
+        writer.execute(() -> {
+            long start = System.nanoTime();
+            int removed = 0;
+            long before = 0, after = 0;
+            for (int shard = 0; shard < 256; shard++) {
+                File f = shardFile(shard);
+                if (!f.exists()) continue;
+                before += f.length();
+                try {
+                    Map<UUID, PlayerState> records = readShard(shard);
+                    boolean changed = false;
+                    for (Iterator<Map.Entry<UUID, PlayerState>> it = records.entrySet().iterator(); it.hasNext(); ) {
+                        Map.Entry<UUID, PlayerState> e = it.next();
+                        if (resident.contains(e.getKey())) continue;
+                        if (policy.drops(e.getValue())) {
+                            it.remove();
+                            removed++;
+                            changed = true;
+                        } else if (e.getValue().lastSeen == 0) {
+                            e.setValue(policy.stamped(e.getValue()));
+                            changed = true;
+                        }
+                    }
+                    if (changed) writeShard(shard, records);
+                } catch (IOException e) {
+                    log.severe("Failed to compact shard " + shardName(shard) + ": " + e.getMessage());
+                }
+                after += f.length(); // 0 once deleted
+            }
+            metrics.timer("storage_compact").since(start);
+            done.accept(new CompactionResult(removed, before, after));
+        });
+    }
+
+    @Override
+    public void close(Snapshot finalState) {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warning("Timed out waiting for pending shard writes.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Map.Entry<Integer, Map<UUID, PlayerState>> e : capture().entrySet()) {
+            update(e.getKey(), e.getValue());
+        }
+    }
+
+    /** Move dirty players' current records into inFlight, grouped by shard. */
+    private Map<Integer, Map<UUID, PlayerState>> capture() {
+        Map<Integer, Map<UUID, PlayerState>> byShard = new HashMap<>();
+        for (Map.Entry<UUID, PlayerState> e : tracker.capture(players).entrySet()) {
+            byShard.computeIfAbsent(shardOf(e.getKey()), k -> new HashMap<>()).put(e.getKey(), e.getValue());
+        }
+        return byShard;
+    }
+
+    private void update(int shard, Map<UUID, PlayerState> changes) {
+        long start = System.nanoTime();
+        try {
+            Map<UUID, PlayerState> records = readShard(shard);
+            for (Map.Entry<UUID, PlayerState> e : changes.entrySet()) {
+                if (e.getValue().isEmpty()) records.remove(e.getKey()); else records.put(e.getKey(), e.getValue());
+            }
+            writeShard(shard, records);
+            tracker.written(changes);
+        } catch (IOException e) {
+            log.severe("Failed to write shard " + shardName(shard) + ": " + e.getMessage());
+            // Players may already be unloaded: keep serving the captured records and write them again next flush
+            tracker.retry(changes);
+        }
+        metrics.timer("storage_write").since(start);
+    }
+
+    // ---------------- Shard files ----------------
+    private static int shardOf(UUID id) {
+        return (int) (id.getMostSignificantBits() >>> 56);
+    }
+
+    private File shardFile(int shard) {
+        return new File(shardFolder, shardName(shard) + ".bin");
+    }
+
+    private static String shardName(int shard) {
+        return String.format(Locale.ROOT, "%02x", shard);
+    }
+
+    private Map<UUID, PlayerState> readShard(int shard) throws IOException {
+        Map<UUID, PlayerState> out = new HashMap<>();
+        File f = shardFile(shard);
+        if (!f.exists()) return out;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)))) {
+            if (in.readInt() != SHARD_MAGIC) throw new IOException("bad shard header");
+            byte version = in.readByte();
+            if (version < 1 || version > SHARD_VERSION) throw new IOException("unsupported shard version " + version);
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                UUID id = new UUID(in.readLong(), in.readLong());
+                int flags = in.readUnsignedByte();
+                boolean hasRange = (flags & PlayerState.HAS_RANGE) != 0;
+                int range = hasRange ? in.readInt() : 0;
+                int epoch = hasRange && version >= 2 ? in.readInt() : 0;
+                int color = (flags & PlayerState.HAS_COLOR) != 0 ? in.readInt() : WaypointColor.NONE;
+                int lastSeen = version >= 3 ? in.readInt() : 0;
+                out.put(id, PlayerState.of(flags, range, color, epoch, lastSeen));
+            }
+        }
+        return out;
+    }
+
+    private void writeShard(int shard, Map<UUID, PlayerState> records) throws IOException {
+        File target = shardFile(shard);
+        if (records.isEmpty()) {
+            if (target.exists() && !target.delete()) throw new IOException("could not delete empty shard");
+            return;
+        }
+        File tmp = new File(shardFolder, target.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(SHARD_MAGIC);
+            out.writeByte(SHARD_VERSION);
+            out.writeInt(records.size());
+            for (Map.Entry<UUID, PlayerState> e : records.entrySet()) {
+                PlayerState st = e.getValue();
+                out.writeLong(e.getKey().getMostSignificantBits());
+                out.writeLong(e.getKey().getLeastSignificantBits());
+                out.writeByte(st.flags);
+                if (st.hasRange()) {
+                    out.writeInt(st.range);
+                    out.writeInt(st.epoch);
+                }
+                if (st.hasColor()) out.writeInt(st.color);
+                out.writeInt(st.lastSeen);
+            }
+        }
+        metrics.counter("storage_bytes_written").add(tmp.length());
+        DataStore.moveAtomically(tmp.toPath(), target.toPath());
+    }
+}
@@ -0,0 +1,431 @@
+package me.perch;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Lazy SQL persistence (storage.type: sql), shareable by every server of a network.
+ * - One row per player keyed by UUID; read on pre-login, dropped from memory after quit
+ * - Mutations only mark the UUID dirty; a flush captures dirty records and upserts them
+ *   in one batched transaction on a writer thread (rows that became empty are deleted)
+ * - The writer queue is bounded: if it is full the records stay dirty and the next flush retries,
+ *   so a slow database never blocks the main thread or grows memory without limit
+ * - A player's record is written as soon as they quit, so the next server reads it on pre-login
+ * - A failed pre-login read is reported as an error, never as "no row": the login is denied rather
+ *   than letting defaults overwrite the stored row
+ * - Dialect from the JDBC URL: sqlite, h2, mysql/mariadb
+ * - If the table is empty but data.yml exists, it is imported once (data.yml.migrated)
+ */
+final class SqlDataStore implements DataStore {
+
+    enum Dialect { SQLITE, H2, MYSQL }
+
+    static final class Settings {
+        String url;
+        String username = "";
+        String password = "";
+        String table = "perchlocator_players";
+        int poolSize = 4;
+        int batchSize = 500;
+        int queueCapacity = 64;
+    }
+
+    private final File folder;
+    private final Logger log;
+    private final Metrics metrics;
+    private final Settings settings;
+    private final Dialect dialect;
+    private final String table;
+    private HikariDataSource pool;
+    private PlayerStateStore players;
+
+    private final DirtyTracker tracker = new DirtyTracker();
+    private final ThreadPoolExecutor writer;
+
+    SqlDataStore(File folder, Logger log, Metrics metrics, Settings settings) {
+        this.folder = folder;
+        this.log = log;
+        this.metrics = metrics;
+        this.settings = settings;
+        this.dialect = dialectOf(settings.url);
+        if (!settings.table.matches("[A-Za-z0-9_]+")) {
+            throw new IllegalArgumentException("invalid storage.sql.table: " + settings.table);
+        }
+        this.table = settings.table;
+        this.writer = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, settings.queueCapacity)), r -> {
+            Thread t = new Thread(r, "PerchLocator-SqlWriter");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    static Dialect dialectOf(String url) {
+        String u = url == null ? "" : url.toLowerCase(Locale.ROOT);
+        if (u.startsWith("jdbc:sqlite:")) return Dialect.SQLITE;
+        if (u.startsWith("jdbc:h2:")) return Dialect.H2;
+        if (u.startsWith("jdbc:mysql:") || u.startsWith("jdbc:mariadb:")) return Dialect.MYSQL;
+        throw new IllegalArgumentException("unsupported storage.sql.url (sqlite, h2, mysql or mariadb): " + url);
+    }
+
+    // ---------------- Load ----------------
+    @Override
+    public void load(PlayerStateStore into, int defaultRange) {
+        this.players = into;
+        HikariConfig hc = new HikariConfig();
+        hc.setPoolName("PerchLocator-SQL");
+        hc.setJdbcUrl(settings.url);
+        if (!settings.username.isEmpty()) hc.setUsername(settings.username);
+        if (!settings.password.isEmpty()) hc.setPassword(settings.password);
+        // SQLite allows a single writer (the writer thread); a second connection keeps pre-login reads from
+        // queueing behind a long batch, and busy_timeout makes them wait out a write lock instead of failing
+        hc.setMaximumPoolSize(dialect == Dialect.SQLITE ? 2 : Math.max(2, settings.poolSize));
+        hc.setConnectionTimeout(5000L);
+        if (dialect == Dialect.SQLITE) hc.addDataSourceProperty("busy_timeout", "5000");
+        if (dialect == Dialect.MYSQL) {
+            hc.addDataSourceProperty("rewriteBatchedStatements", "true");
+            hc.addDataSourceProperty("cachePrepStmts", "true");
+        }
+        pool = new HikariDataSource(hc);
+
+        try (Connection c = pool.getConnection(); Statement s = c.createStatement()) {
+            s.executeUpdate("CREATE TABLE IF NOT EXISTS " + table + " ("
+                    + "uuid CHAR(36) NOT NULL PRIMARY KEY, "
+                    + "flags INT NOT NULL, "
+                    + "range_blocks INT NOT NULL, "
+                    + "color INT NOT NULL, "
+                    + "range_epoch INT NOT NULL DEFAULT 0, "
+                    + "last_seen INT NOT NULL DEFAULT 0, "
+                    + "updated_at BIGINT NOT NULL)");
+        } catch (SQLException e) {
+            log.severe("Failed to create table " + table + ": " + e.getMessage());
+            return;
+        }
+        addColumnIfMissing("range_epoch", "INT NOT NULL DEFAULT 0");
+        addColumnIfMissing("last_seen", "INT NOT NULL DEFAULT 0");
+
+        File legacy = new File(folder, "data.yml");
+        if (legacy.exists() && isTableEmpty()) migrateFromYaml(legacy, defaultRange);
+    }
+
+    @Override
+    public boolean isLazy() {
+        return true;
+    }
+
+    /** MySQL/MariaDB is meant to be shared by a network; SQLite and H2 files belong to one server. */
+    @Override
+    public boolean isShared() {
+        return dialect == Dialect.MYSQL;
+    }
+
+    @Override
+    public PlayerState loadPlayer(UUID id) throws IOException {
+        if (tracker.isDirty(id)) return null;
+        PlayerState pending = tracker.inFlight(id);
+        if (pending != null) return pending;
+        long start = System.nanoTime();
+        try (Connection c = pool.getConnection();
+             PreparedStatement ps = c.prepareStatement(
+                     "SELECT flags, range_blocks, color, range_epoch, last_seen FROM " + table + " WHERE uuid = ?")) {
+            ps.setString(1, id.toString());
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next()
+                        ? PlayerState.of(rs.getInt(1), rs.getInt(2), rs.getInt(3), rs.getInt(4), rs.getInt(5))
+                        : PlayerState.EMPTY;
+            }
+        } catch (SQLException e) {
+            log.severe("Failed to read " + id + " from " + table + ": " + e.getMessage());
+            throw new IOException(e.getMessage(), e);
+        } finally {
+            metrics.timer("storage_read").since(start);
+        }
+    }
+
+    /** Tables created by older versions: add the column (probe with a query, portable across dialects). */
+    private void addColumnIfMissing(String column, String definition) {
+        try (Connection c = pool.getConnection(); Statement s = c.createStatement()) {
+            try {
+                s.executeQuery("SELECT " + column + " FROM " + table + " WHERE 1 = 0").close();
+            } catch (SQLException missing) {
+                s.executeUpdate("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+                log.info("Added column " + column + " to " + table + ".");
+            }
+        } catch (SQLException e) {
+            log.severe("Failed to add column " + column + " to " + table + ": " + e.getMessage());
+        }
+    }
+
+    private boolean isTableEmpty() {
+        try (Connection c = pool.getConnection(); Statement s = c.createStatement();
+             ResultSet rs = s.executeQuery("SELECT 1 FROM " + table + " LIMIT 1")) {
+            return !rs.next();
+        } catch (SQLException e) {
+            log.severe("Failed to query " + table + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void migrateFromYaml(File legacy, int defaultRange) {
+        PlayerStateStore all = new PlayerStateStore();
+        new YamlDataStore(legacy, log, metrics).load(all, defaultRange);
+        try {
+            write(all.copy());
+            if (!legacy.renameTo(new File(folder, "data.yml.migrated"))) {
+                log.warning("Could not rename data.yml to data.yml.migrated.");
+            }
+            log.info("Migrated data.yml to " + table + " (" + all.size() + " players).");
+        } catch (SQLException e) {
+            log.severe("Failed to migrate data.yml: " + e.getMessage());
+        }
+    }
+
+    // ---------------- Mutations ----------------
+    @Override
+    public void disabledChanged(UUID id, boolean disabled) { tracker.mark(id); }
+
+    @Override
+    public void rangeChanged(UUID id, int range, int epoch) { tracker.mark(id); }
+
+    @Override
+    public void colorChanged(UUID id, WaypointColor color) { tracker.mark(id); }
+
+    @Override
+    public void lastSeenChanged(UUID id, int day) { tracker.mark(id); }
+
+    @Override
+    public void recordRemoved(UUID id) { tracker.mark(id); }
+
+    @Override
+    public void playerQuit(UUID id) {
+        PlayerState st = tracker.captureOne(players, id);
+        if (st != null) submit(Collections.singletonMap(id, st));
+    }
+
+    // ---------------- Flush ----------------
+    @Override
+    public void flush(Supplier<Snapshot> state) {
+        if (tracker.isEmpty()) return;
+        Map<UUID, PlayerState> captured = tracker.capture(players);
+        Map<UUID, PlayerState> batch = new HashMap<>();
+        for (Map.Entry<UUID, PlayerState> e : captured.entrySet()) {
+            batch.put(e.getKey(), e.getValue());
+            if (batch.size() >= settings.batchSize) {
+                submit(batch);
+                batch = new HashMap<>();
+            }
+        }
+        if (!batch.isEmpty()) submit(batch);
+    }
+
+    private void submit(Map<UUID, PlayerState> batch) {
+        try {
+            writer.execute(() -> writeAsync(batch));
+        } catch (RejectedExecutionException e) {
+            metrics.counter("storage_queue_rejected").increment();
+            tracker.retry(batch);
+        }
+    }
+
+    private void writeAsync(Map<UUID, PlayerState> batch) {
+        try {
+            write(batch);
+            tracker.written(batch);
+        } catch (SQLException e) {
+            log.severe("Failed to write " + batch.size() + " players to " + table + ": " + e.getMessage());
+            // Keep serving the captured records and write them again on the next flush
+            tracker.retry(batch);
+        }
+    }
+
+    /**
+     * Set-based retention in one transaction (stamp rows without a last-seen day, delete idle and
+     * default-only rows); SQLite is VACUUMed afterwards so the file actually shrinks.
+     * Byte counts are only known for SQLite files.
+     */
+    @Override
+    public void compact(RetentionPolicy policy, Snapshot state, Consumer<CompactionResult> done) {
+        try {
+            writer.execute(() -> done.accept(compactNow(policy)));
+        } catch (RejectedExecutionException e) {
+            log.warning("SQL write queue is full; skipping this compaction.");
+            done.accept(new CompactionResult(0, CompactionResult.UNKNOWN, CompactionResult.UNKNOWN));
+        }
+    }
+
+    private CompactionResult compactNow(RetentionPolicy policy) {
+        long start = System.nanoTime();
+        File file = sqliteFile();
+        long before = file != null ? file.length() : CompactionResult.UNKNOWN;
+        int removed = 0;
+        try (Connection c = pool.getConnection()) {
+            c.setAutoCommit(false);
+            try {
+                try (PreparedStatement ps = c.prepareStatement("UPDATE " + table + " SET last_seen = ? WHERE last_seen = 0")) {
+                    ps.setInt(1, policy.today);
+                    ps.executeUpdate();
+                }
+                if (policy.maxIdleDays > 0) {
+                    try (PreparedStatement ps = c.prepareStatement(
+                            "DELETE FROM " + table + " WHERE last_seen > 0 AND last_seen < ?")) {
+                        ps.setInt(1, policy.today - policy.maxIdleDays);
+                        removed += ps.executeUpdate();
+                    }
+                }
+                if (policy.dropDefaults) {
+                    // same predicate as RetentionPolicy#isDefault: bar ON, no color, no range or the global
+                    // range not customized; returning players without a row follow the global range.
+                    // Shared tables: any non-custom range follows each server's own global range
+                    String sameRange = policy.sharedRanges ? "" : " AND range_blocks = ?";
+                    try (PreparedStatement ps = c.prepareStatement("DELETE FROM " + table
+                            + " WHERE flags = 0 OR (flags = ? AND range_epoch <> ?" + sameRange + ")")) {
+                        ps.setInt(1, PlayerState.HAS_RANGE);
+                        ps.setInt(2, PlayerState.CUSTOM_EPOCH);
+                        if (!policy.sharedRanges) ps.setInt(3, policy.globalRange);
+                        removed += ps.executeUpdate();
+                    }
+                }
+                c.commit();
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            log.severe("Failed to compact " + table + ": " + e.getMessage());
+        }
+        if (file != null && removed > 0) vacuum();
+        metrics.timer("storage_compact").since(start);
+        return new CompactionResult(removed, before, file != null ? file.length() : CompactionResult.UNKNOWN);
+    }
+
+    /**
+     * Rebuild the SQLite file to return freed pages to the OS. Runs on its own connection, never a pooled
+     * one, so pre-login reads are not stuck behind it for the pool timeout, and only when at least a
+     * quarter of the file is free: VACUUM rewrites the whole database.
+     */
+    private void vacuum() {
+        Properties props = new Properties();
+        props.setProperty("busy_timeout", "5000");
+        try (Connection c = DriverManager.getConnection(settings.url, props); Statement s = c.createStatement()) {
+            long pages, free;
+            try (ResultSet rs = s.executeQuery("PRAGMA page_count")) {
+                pages = rs.next() ? rs.getLong(1) : 0;
+            }
+            try (ResultSet rs = s.executeQuery("PRAGMA freelist_count")) {
+                free = rs.next() ? rs.getLong(1) : 0;
+            }
+            if (pages == 0 || free * 4 < pages) return;
+            long start = System.nanoTime();
+            s.executeUpdate("VACUUM");
+            metrics.timer("storage_vacuum").since(start);
+        } catch (SQLException e) {
+            log.warning("Failed to vacuum " + table + " (space is reclaimed on a later pass): " + e.getMessage());
+        }
+    }
+
+    /** Database file for jdbc:sqlite:<path>[?params] URLs, null for in-memory or other dialects. */
+    private File sqliteFile() {
+        if (dialect != Dialect.SQLITE) return null;
+        String path = settings.url.substring("jdbc:sqlite:".length());
+        int q = path.indexOf('?');
+        if (q >= 0) path = path.substring(0, q);
+        if (path.startsWith("file:")) path = path.substring(5);
+        if (path.isEmpty() || path.startsWith(":memory:")) return null;
+        return new File(path);
+    }
+
+    @Override
+    public void close(Snapshot finalState) {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warning("Timed out waiting for pending SQL writes.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (pool == null) return;
+        Map<UUID, PlayerState> rest = tracker.capture(players);
+        if (!rest.isEmpty()) {
+            try {
+                write(rest);
+            } catch (SQLException e) {
+                log.severe("Failed to write " + rest.size() + " players on shutdown: " + e.getMessage());
+            }
+        }
+        pool.close();
+    }
+
+    /** One transaction: upsert non-empty records, delete empty ones. */
+    private void write(Map<UUID, PlayerState> records) throws SQLException {
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        try (Connection c = pool.getConnection()) {
+            c.setAutoCommit(false);
+            try (PreparedStatement up = c.prepareStatement(upsertSql());
+                 PreparedStatement del = c.prepareStatement("DELETE FROM " + table + " WHERE uuid = ?")) {
+                int ups = 0, dels = 0;
+                for (Map.Entry<UUID, PlayerState> e : records.entrySet()) {
+                    PlayerState st = e.getValue();
+                    if (st.isEmpty()) {
+                        del.setString(1, e.getKey().toString());
+                        del.addBatch();
+                        dels++;
+                    } else {
+                        up.setString(1, e.getKey().toString());
+                        up.setInt(2, st.flags);
+                        up.setInt(3, st.range);
+                        up.setInt(4, st.color);
+                        up.setInt(5, st.epoch);
+                        up.setInt(6, st.lastSeen);
+                        up.setLong(7, now);
+                        up.addBatch();
+                        ups++;
+                    }
+                }
+                if (ups > 0) up.executeBatch();
+                if (dels > 0) del.executeBatch();
+                c.commit();
+                metrics.counter("storage_rows_written").add(records.size());
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(true);
+            }
+        }
+        metrics.timer("storage_write").since(start);
+    }
+
+    private String upsertSql() {
+        String cols = " (uuid, flags, range_blocks, color, range_epoch, last_seen, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?)";
+        switch (dialect) {
+            case H2:
+                return "MERGE INTO " + table + cols.replace(") VALUES", ") KEY (uuid) VALUES");
+            case MYSQL:
+                return "INSERT INTO " + table + cols + " ON DUPLICATE KEY UPDATE "
+                        + "flags = VALUES(flags), range_blocks = VALUES(range_blocks), "
+                        + "color = VALUES(color), range_epoch = VALUES(range_epoch), "
+                        + "last_seen = VALUES(last_seen), updated_at = VALUES(updated_at)";
+            default:
+                return "INSERT INTO " + table + cols + " ON CONFLICT(uuid) DO UPDATE SET "
+                        + "flags = excluded.flags, range_blocks = excluded.range_blocks, "
+                        + "color = excluded.color, range_epoch = excluded.range_epoch, "
+                        + "last_seen = excluded.last_seen, updated_at = excluded.updated_at";
+        }
+    }
+}
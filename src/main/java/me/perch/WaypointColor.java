@@ -0,0 +1,179 @@
+package me.perch;
+
+import org.bukkit.ChatColor;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Canonical waypoint color: a vanilla named color, a 24-bit RGB value, or reset (vanilla default).
+ * - Parsed and validated once when the player sets it
+ * - Stored as a packed int (see {@link #packed()}); named colors and reset are shared constants, RGB
+ *   colors are interned on first use, so decoding a stored color does not format strings again
+ * - Carries the precomputed /waypoint argument and display string
+ */
+final class WaypointColor {
+
+    /** Packed value for "no color" / reset. */
+    static final int NONE = -1;
+    private static final int NAMED_BIT = 1 << 24;
+
+    // Vanilla team color names (same as the ChatColor constants)
+    private static final String[] NAMES = {
+            "black", "dark_blue", "dark_green", "dark_aqua", "dark_red", "dark_purple", "gold", "gray",
+            "dark_gray", "blue", "green", "aqua", "red", "light_purple", "yellow", "white"
+    };
+    private static final WaypointColor[] NAMED = new WaypointColor[NAMES.length];
+    private static final ChatColor[] NAMED_CHAT = new ChatColor[NAMES.length];
+    private static final int[] NAMED_RGB = {
+            0x000000, 0x0000AA, 0x00AA00, 0x00AAAA, 0xAA0000, 0xAA00AA, 0xFFAA00, 0xAAAAAA,
+            0x555555, 0x5555FF, 0x55FF55, 0x55FFFF, 0xFF5555, 0xFF55FF, 0xFFFF55, 0xFFFFFF
+    };
+
+    // RGB colors in use (players pick few distinct colors); bounded so API callers cannot grow it forever
+    private static final int MAX_INTERNED = 4096;
+    private static final ConcurrentHashMap<Integer, WaypointColor> INTERNED = new ConcurrentHashMap<>();
+
+    static final WaypointColor RESET = new WaypointColor(NONE, "reset", "reset", ChatColor.WHITE + "Default");
+
+    static {
+        for (int i = 0; i < NAMES.length; i++) {
+            ChatColor code = ChatColor.valueOf(NAMES[i].toUpperCase(Locale.ROOT));
+            NAMED_CHAT[i] = code;
+            NAMED[i] = new WaypointColor(NAMED_BIT | i, NAMES[i], NAMES[i], code + titleCase(NAMES[i]));
+        }
+    }
+
+    private final int packed;
+    private final String raw;
+    private final String commandArg;
+    private final String display;
+
+    private WaypointColor(int packed, String raw, String commandArg, String display) {
+        this.packed = packed;
+        this.raw = raw;
+        this.commandArg = commandArg;
+        this.display = display;
+    }
+
+    // ---------------- Parsing ----------------
+    /**
+     * Accepts: named color (e.g. "red", "dark blue"), hex "#RRGGBB" or "RRGGBB", or "reset".
+     * Returns null if the input is not a valid color.
+     */
+    static WaypointColor parse(String input) {
+        if (input == null) return null;
+        String s = input.trim();
+        if (s.equalsIgnoreCase("reset") || s.equalsIgnoreCase("unset")) return RESET;
+
+        String hex = s.startsWith("#") ? s.substring(1) : s;
+        if (hex.length() == 6) {
+            int rgb = parseHex6(hex);
+            if (rgb >= 0) return rgb(rgb);
+        }
+
+        String name = s.toLowerCase(Locale.ROOT).replace(' ', '_').replace('-', '_');
+        for (int i = 0; i < NAMES.length; i++) {
+            if (NAMES[i].equals(name)) return NAMED[i];
+        }
+        return null;
+    }
+
+    /** Inverse of {@link #packed()}; unknown values map to reset. */
+    static WaypointColor of(int packed) {
+        if (packed == NONE) return RESET;
+        if ((packed & NAMED_BIT) != 0) {
+            int i = packed & 0xFF;
+            return i < NAMED.length ? NAMED[i] : RESET;
+        }
+        return rgb(packed & 0xFFFFFF);
+    }
+
+    /** Typed form for API readers: the named color if any, otherwise 0xRRGGBB or NONE. */
+    static WaypointColor of(ChatColor named, int rgb) {
+        if (named != null) {
+            for (int i = 0; i < NAMED_CHAT.length; i++) {
+                if (NAMED_CHAT[i] == named) return NAMED[i];
+            }
+        }
+        return rgb == NONE ? RESET : rgb(rgb & 0xFFFFFF);
+    }
+
+    /** 0xRRGGBB of a packed value (named colors resolved to their vanilla RGB), or NONE. Allocation-free. */
+    static int rgbOf(int packed) {
+        if (packed == NONE) return NONE;
+        if ((packed & NAMED_BIT) != 0) {
+            int i = packed & 0xFF;
+            return i < NAMED_RGB.length ? NAMED_RGB[i] : NONE;
+        }
+        return packed & 0xFFFFFF;
+    }
+
+    /** Named color of a packed value, or null for reset and custom RGB. Allocation-free. */
+    static ChatColor namedOf(int packed) {
+        if (packed == NONE || (packed & NAMED_BIT) == 0) return null;
+        int i = packed & 0xFF;
+        return i < NAMED_CHAT.length ? NAMED_CHAT[i] : null;
+    }
+
+    private static WaypointColor rgb(int rgb) {
+        WaypointColor c = INTERNED.get(rgb);
+        if (c != null) return c;
+        c = newRgb(rgb);
+        if (INTERNED.size() < MAX_INTERNED) {
+            WaypointColor raced = INTERNED.putIfAbsent(rgb, c);
+            if (raced != null) return raced;
+        }
+        return c;
+    }
+
+    private static WaypointColor newRgb(int rgb) {
+        String hex = String.format(Locale.ROOT, "%06X", rgb);
+        StringBuilder legacy = new StringBuilder("§x");
+        for (int i = 0; i < 6; i++) legacy.append('§').append(hex.charAt(i));
+        return new WaypointColor(rgb, "#" + hex, "hex " + hex, legacy + "#" + hex);
+    }
+
+    private static int parseHex6(String s) {
+        int v = 0;
+        for (int i = 0; i < 6; i++) {
+            int d = Character.digit(s.charAt(i), 16);
+            if (d < 0) return -1;
+            v = (v << 4) | d;
+        }
+        return v;
+    }
+
+    private static String titleCase(String name) {
+        StringBuilder sb = new StringBuilder(name.length());
+        boolean up = true;
+        for (char c : name.toCharArray()) {
+            if (c == '_') {
+                sb.append(' ');
+                up = true;
+            } else {
+                sb.append(up ? Character.toUpperCase(c) : c);
+                up = false;
+            }
+        }
+        return sb.toString();
+    }
+
+    // ---------------- Accessors ----------------
+    /** Compact storage form: NONE, 0xRRGGBB, or NAMED_BIT | name index. */
+    int packed() { return packed; }
+
+    boolean isReset() { return packed == NONE; }
+
+    /** Canonical text form: "red", "#FF00AA" or "reset". */
+    String raw() { return raw; }
+
+    /** Arguments after "waypoint modify <target> color ". */
+    String commandArg() { return commandArg; }
+
+    /** Colored, title-cased name for placeholders. */
+    String display() { return display; }
+
+    @Override
+    public String toString() { return raw; }
+}
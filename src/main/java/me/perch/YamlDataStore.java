@@ -0,0 +1,165 @@
+package me.perch;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * data.yml persistence (storage.type: yaml).
+ * - Any mutation marks the store dirty; a flush rewrites the whole file
+ * - Writes are snapshots taken on the main thread and serialized/written on a single background thread
+ * - Files are replaced atomically (data.yml.tmp + rename) so a crash never leaves a half-written file
+ */
+final class YamlDataStore implements DataStore {
+
+    private final File file;
+    private final Logger log;
+    private final Metrics metrics;
+    private boolean dirty = false;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "PerchLocator-DataWriter");
+        t.setDaemon(true);
+        return t;
+    });
+
+    YamlDataStore(File file, Logger log, Metrics metrics) {
+        this.file = file;
+        this.log = log;
+        this.metrics = metrics;
+    }
+
+    /** Reads data.yml into the given store. Missing file = empty state. */
+    @Override
+    public void load(PlayerStateStore into, int defaultRange) {
+        if (!file.exists()) {
+            try {
+                file.getParentFile().mkdirs();
+                file.createNewFile();
+            } catch (IOException e) {
+                log.severe("Could not create data.yml: " + e.getMessage());
+            }
+        }
+        YamlConfiguration data = YamlConfiguration.loadConfiguration(file);
+
+        for (String s : data.getStringList("receiveDisabled")) {
+            try { into.setDisabled(UUID.fromString(s), true); } catch (IllegalArgumentException ignored) {}
+        }
+        if (data.isConfigurationSection("lastReceiveWhenEnabled")) {
+            for (String k : Objects.requireNonNull(data.getConfigurationSection("lastReceiveWhenEnabled")).getKeys(false)) {
+                try {
+                    UUID id = UUID.fromString(k);
+                    int r = Math.max(0, data.getInt("lastReceiveWhenEnabled." + k, defaultRange));
+                    into.setRange(id, r, data.getInt("rangeEpoch." + k, 0));
+                } catch (IllegalArgumentException ignored) {}
+            }
+        }
+        if (data.isConfigurationSection("preferredColor")) {
+            // Older files store whatever the player typed; normalize it and drop anything vanilla would reject
+            int invalid = 0;
+            for (String k : Objects.requireNonNull(data.getConfigurationSection("preferredColor")).getKeys(false)) {
+                try {
+                    UUID id = UUID.fromString(k);
+                    WaypointColor c = WaypointColor.parse(data.getString("preferredColor." + k, "unset"));
+                    if (c != null) into.setColor(id, c); else invalid++;
+                } catch (IllegalArgumentException ignored) {}
+            }
+            if (invalid > 0) log.warning("Dropped " + invalid + " invalid preferredColor entries from data.yml.");
+        }
+        if (data.isConfigurationSection("lastSeen")) {
+            // after the other sections: only existing records carry a last-seen day
+            for (String k : Objects.requireNonNull(data.getConfigurationSection("lastSeen")).getKeys(false)) {
+                try {
+                    into.setLastSeen(UUID.fromString(k), (int) LocalDate.parse(data.getString("lastSeen." + k, "")).toEpochDay());
+                } catch (IllegalArgumentException | DateTimeParseException ignored) {}
+            }
+        }
+    }
+
+    @Override
+    public void disabledChanged(UUID id, boolean disabled) { dirty = true; }
+
+    @Override
+    public void rangeChanged(UUID id, int range, int epoch) { dirty = true; }
+
+    @Override
+    public void colorChanged(UUID id, WaypointColor color) { dirty = true; }
+
+    @Override
+    public void lastSeenChanged(UUID id, int day) { dirty = true; }
+
+    /** Queue a snapshot for writing on the background thread, if anything changed. */
+    @Override
+    public void flush(Supplier<Snapshot> state) {
+        if (!dirty) return;
+        dirty = false;
+        Snapshot snapshot = state.get();
+        writer.execute(() -> write(snapshot));
+    }
+
+    /** Everything is resident, so compaction is a full rewrite from the already filtered snapshot. */
+    @Override
+    public void compact(RetentionPolicy policy, Snapshot state, Consumer<CompactionResult> done) {
+        dirty = false;
+        writer.execute(() -> {
+            long before = file.length();
+            write(state);
+            done.accept(new CompactionResult(0, before, file.length()));
+        });
+    }
+
+    /** Drain pending async writes, then write the final snapshot on the calling thread. */
+    @Override
+    public void close(Snapshot finalState) {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warning("Timed out waiting for pending data.yml writes.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (dirty) {
+            write(finalState);
+            dirty = false;
+        }
+    }
+
+    /** Serialize and atomically replace data.yml on the calling thread. */
+    void write(Snapshot s) {
+        long start = System.nanoTime();
+        YamlConfiguration data = new YamlConfiguration();
+        List<String> disabled = new ArrayList<>();
+        for (Map.Entry<UUID, PlayerState> e : s.states.entrySet()) {
+            PlayerState st = e.getValue();
+            if (st.isDisabled()) disabled.add(e.getKey().toString());
+            if (st.hasRange()) data.set("lastReceiveWhenEnabled." + e.getKey(), st.range);
+            if (st.hasRange() && st.epoch != 0) data.set("rangeEpoch." + e.getKey(), st.epoch);
+            if (st.hasColor()) data.set("preferredColor." + e.getKey(), st.waypointColor().raw());
+            if (st.lastSeen > 0) data.set("lastSeen." + e.getKey(), LocalDate.ofEpochDay(st.lastSeen).toString());
+        }
+        data.set("receiveDisabled", disabled);
+
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try {
+            byte[] bytes = data.saveToString().getBytes(StandardCharsets.UTF_8);
+            Files.write(tmp.toPath(), bytes);
+            DataStore.moveAtomically(tmp.toPath(), file.toPath());
+            metrics.counter("storage_bytes_written").add(bytes.length);
+        } catch (IOException e) {
+            log.severe("Failed to save data.yml: " + e.getMessage());
+        }
+        metrics.timer("storage_write").since(start);
+    }
+}